@@ -0,0 +1,116 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.endpoint;
+
+import org.kitteh.craftirc.endpoint.defaults.IRCEndpoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures creating a {@link Message}, by copying constructor and by
+ * builder, and overlaying per-target data on it
+ * with a {@link TargetedMessage}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageBenchmark {
+    private Endpoint source;
+    private Endpoint target;
+    private Map<String, Object> data;
+    private Message message;
+
+    @Setup
+    public void setup() throws Exception {
+        this.source = StubEndpoint.create("Source");
+        this.target = StubEndpoint.create("Target");
+        this.data = new HashMap<>();
+        this.data.put(IRCEndpoint.IRC_CHANNEL.getName(), "#craftirc");
+        this.data.put(IRCEndpoint.IRC_MASK.getName(), "kitteh!meow@kitteh.org");
+        this.data.put(IRCEndpoint.IRC_MESSAGE_TYPE.getName(), IRCEndpoint.MessageType.MESSAGE);
+        this.data.put(IRCEndpoint.IRC_PREFIX.getName(), "@");
+        this.data.put(IRCEndpoint.IRC_PREFIXES.getName(), "@+");
+        this.data.put(IRCEndpoint.IRC_NICK.getName(), "kitteh");
+        this.data.put(Endpoint.MESSAGE_FORMAT.getName(), IRCEndpoint.MessageType.MESSAGE.getFormat());
+        this.data.put(Endpoint.MESSAGE_TEXT.getName(), "Hello there, how is everyone doing today?");
+        this.data.put(Endpoint.SENDER_NAME.getName(), "kitteh");
+        this.message = this.construct();
+    }
+
+    @Benchmark
+    public Message construct() {
+        return new Message(this.source, "<kitteh> Hello there, how is everyone doing today?", this.data);
+    }
+
+    @Benchmark
+    public Message build() {
+        return Message.builder()
+                .source(this.source)
+                .data(IRCEndpoint.IRC_CHANNEL, "#craftirc")
+                .data(IRCEndpoint.IRC_MASK, "kitteh!meow@kitteh.org")
+                .data(IRCEndpoint.IRC_MESSAGE_TYPE, IRCEndpoint.MessageType.MESSAGE)
+                .data(IRCEndpoint.IRC_PREFIX, "@")
+                .data(IRCEndpoint.IRC_PREFIXES, "@+")
+                .data(IRCEndpoint.IRC_NICK, "kitteh")
+                .data(Endpoint.MESSAGE_FORMAT, IRCEndpoint.MessageType.MESSAGE.getFormat())
+                .data(Endpoint.MESSAGE_TEXT, "Hello there, how is everyone doing today?")
+                .data(Endpoint.SENDER_NAME, "kitteh")
+                .defaultMessage("<kitteh> Hello there, how is everyone doing today?")
+                .build();
+    }
+
+    @Benchmark
+    public TargetedMessage overlayRead() {
+        TargetedMessage targeted = new TargetedMessage(this.target, this.message);
+        targeted.getCustomData().get(Endpoint.SENDER_NAME);
+        targeted.getCustomData().get(Endpoint.MESSAGE_TEXT);
+        targeted.getCustomData().containsKey(IRCEndpoint.IRC_PREFIX);
+        return targeted;
+    }
+
+    @Benchmark
+    public TargetedMessage overlayWrite() {
+        TargetedMessage targeted = new TargetedMessage(this.target, this.message);
+        targeted.getCustomData().put(Endpoint.SENDER_NAME, "k\u200Bitteh");
+        targeted.getCustomData().put(Endpoint.MESSAGE_TEXT, "Hello there, how is everyone doing today?\u00A7r");
+        targeted.getCustomData().get(Endpoint.MESSAGE_TEXT);
+        targeted.getCustomData().size();
+        return targeted;
+    }
+}
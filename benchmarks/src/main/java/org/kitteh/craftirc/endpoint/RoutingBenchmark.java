@@ -0,0 +1,91 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.endpoint;
+
+import org.kitteh.craftirc.BenchmarkFixtures;
+import org.kitteh.craftirc.CraftIRC;
+import org.kitteh.craftirc.endpoint.link.LinkManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures looking up the destinations of a message from a source with
+ * many links.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RoutingBenchmark {
+    @Param({"1", "30"})
+    private int links;
+
+    private CraftIRC plugin;
+    private EndpointManager endpointManager;
+
+    @Setup
+    public void setup() throws Exception {
+        this.plugin = BenchmarkFixtures.createPlugin();
+        this.endpointManager = new EndpointManager(this.plugin, BenchmarkFixtures.config(Collections.emptyMap()), Collections.emptyList());
+        this.endpointManager.processCompleted(StubEndpoint.create("Source"));
+        List<Map<String, Object>> linkList = new ArrayList<>();
+        for (int i = 0; i < this.links; i++) {
+            this.endpointManager.processCompleted(StubEndpoint.create("Target" + i));
+            Map<String, Object> link = new HashMap<>();
+            link.put("source", "Source");
+            link.put("target", "Target" + i);
+            linkList.add(link);
+        }
+        this.endpointManager.loadRoutes(new LinkManager(this.plugin, BenchmarkFixtures.config(linkList).getChildrenList()));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        BenchmarkFixtures.shutdown(this.plugin);
+    }
+
+    @Benchmark
+    public EndpointManager.Route[] getDestinations() {
+        return this.endpointManager.getDestinations("Source");
+    }
+}
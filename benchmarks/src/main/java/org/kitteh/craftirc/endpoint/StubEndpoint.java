@@ -0,0 +1,70 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.endpoint;
+
+import org.kitteh.craftirc.BenchmarkFixtures;
+import org.kitteh.craftirc.exceptions.CraftIRCInvalidConfigException;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+
+/**
+ * An {@link Endpoint} which receives and discards messages.
+ */
+public final class StubEndpoint extends Endpoint {
+    private volatile Object last;
+
+    /**
+     * Creates a loaded Endpoint with the given name.
+     *
+     * @param name endpoint name
+     * @return the Endpoint
+     * @throws CraftIRCInvalidConfigException if loading fails
+     */
+    @Nonnull
+    public static StubEndpoint create(@Nonnull String name) throws CraftIRCInvalidConfigException {
+        StubEndpoint endpoint = new StubEndpoint();
+        endpoint.load(null, BenchmarkFixtures.config(Collections.singletonMap("name", name)));
+        return endpoint;
+    }
+
+    /**
+     * Marks a message as queued now, as {@link EndpointManager} does when
+     * a message is sent, so latency is measured as it would be in use.
+     *
+     * @param message message to mark
+     * @return the message
+     */
+    @Nonnull
+    public static Message stamp(@Nonnull Message message) {
+        message.setQueuedNanos(System.nanoTime());
+        return message;
+    }
+
+    @Override
+    protected void receiveMessage(@Nonnull TargetedMessage message) {
+        // Keep the message reachable so the work isn't optimized away
+        this.last = message;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.endpoint.link;
+
+import org.kitteh.craftirc.BenchmarkFixtures;
+import org.kitteh.craftirc.CraftIRC;
+import org.kitteh.craftirc.endpoint.Endpoint;
+import org.kitteh.craftirc.endpoint.Message;
+import org.kitteh.craftirc.endpoint.StubEndpoint;
+import org.kitteh.craftirc.endpoint.TargetedMessage;
+import org.kitteh.craftirc.endpoint.defaults.IRCEndpoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures running a message through a typical IRC to Minecraft filter
+ * chain: colors, a moderation regex, anti-highlight and a data mapper.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LinkFilterBenchmark {
+    private CraftIRC plugin;
+    private Link link;
+    private Endpoint target;
+    private Endpoint source;
+
+    @Setup
+    public void setup() throws Exception {
+        this.plugin = BenchmarkFixtures.createPlugin();
+        List<Map<String, Object>> filters = new ArrayList<>();
+        filters.add(LinkFilterBenchmark.filter("color"));
+        Map<String, Object> regex = LinkFilterBenchmark.filter("regex");
+        regex.put("value", Endpoint.MESSAGE_TEXT.getName());
+        regex.put("pattern", "(?i)\\b(?:badword|worseword)\\b");
+        regex.put("action", "drop");
+        filters.add(regex);
+        Map<String, Object> antiHighlight = LinkFilterBenchmark.filter("antihighlight");
+        antiHighlight.put("variable", Endpoint.SENDER_NAME.getName());
+        antiHighlight.put("splitter", "\u200B");
+        filters.add(antiHighlight);
+        Map<String, Object> dataMapper = LinkFilterBenchmark.filter("datamapper");
+        dataMapper.put("message", "[IRC] <%IRC_PREFIX%%SENDER_NAME%> %MESSAGE_TEXT%");
+        filters.add(dataMapper);
+        this.link = new Link(this.plugin, "IRC", "Chat", BenchmarkFixtures.config(filters).getChildrenList());
+
+        this.target = StubEndpoint.create("Chat");
+        this.source = StubEndpoint.create("IRC");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        BenchmarkFixtures.shutdown(this.plugin);
+    }
+
+    @Benchmark
+    public TargetedMessage filterMessage() {
+        // A fresh message each time, as match results are cached per message
+        Message message = Message.builder()
+                .source(this.source)
+                .data(IRCEndpoint.IRC_CHANNEL, "#craftirc")
+                .data(IRCEndpoint.IRC_PREFIX, "@")
+                .data(IRCEndpoint.IRC_NICK, "kitteh")
+                .data(Endpoint.MESSAGE_TEXT, "\u000304Hello\u000f there, \u0002how\u0002 is everyone doing today?")
+                .data(Endpoint.SENDER_NAME, "kitteh")
+                .defaultMessage("<kitteh> Hello there, how is everyone doing today?")
+                .build();
+        TargetedMessage targeted = new TargetedMessage(this.target, StubEndpoint.stamp(message));
+        this.link.filterMessage(targeted);
+        return targeted;
+    }
+
+    private static Map<String, Object> filter(String type) {
+        Map<String, Object> filter = new HashMap<>();
+        filter.put("type", type);
+        return filter;
+    }
+}
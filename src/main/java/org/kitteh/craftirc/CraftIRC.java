@@ -28,16 +28,22 @@ import ninja.leaping.configurate.ConfigurationNode;
 import ninja.leaping.configurate.yaml.YAMLConfigurationLoader;
 import org.kitteh.craftirc.endpoint.Endpoint;
 import org.kitteh.craftirc.endpoint.EndpointManager;
+import org.kitteh.craftirc.endpoint.filter.Filter;
 import org.kitteh.craftirc.endpoint.filter.FilterManager;
+import org.kitteh.craftirc.endpoint.link.FilterStats;
+import org.kitteh.craftirc.endpoint.link.Link;
 import org.kitteh.craftirc.endpoint.link.LinkManager;
 import org.kitteh.craftirc.exceptions.CraftIRCInvalidConfigException;
 import org.kitteh.craftirc.exceptions.CraftIRCUnableToStartException;
 import org.kitteh.craftirc.exceptions.CraftIRCWillLeakTearsException;
 import org.kitteh.craftirc.irc.BotManager;
+import org.kitteh.craftirc.irc.IRCBot;
 import org.kitteh.craftirc.sponge.ChatEndpoint;
 import org.kitteh.craftirc.sponge.JoinEndpoint;
+import org.kitteh.craftirc.sponge.PermissionCache;
 import org.kitteh.craftirc.sponge.PermissionFilter;
 import org.kitteh.craftirc.sponge.QuitEndpoint;
+import org.kitteh.craftirc.util.loadable.Loadable;
 import org.kitteh.craftirc.util.shutdownable.Shutdownable;
 import org.slf4j.Logger;
 import org.spongepowered.api.Game;
@@ -60,6 +66,8 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
@@ -68,8 +76,29 @@ import java.util.concurrent.CopyOnWriteArraySet;
 @Plugin(id = "craftirc", name = "CraftIRC", version = "4.2.1-SNAPSHOT", authors = "mbaxter",
         description = "Relay between IRC and Minecraft", url = "http://kitteh.org")
 public final class CraftIRC {
+    private static final class FilterReport {
+        private final Link link;
+        private final Filter filter;
+        private final FilterStats stats;
+
+        private FilterReport(@Nonnull Link link, @Nonnull Filter filter, @Nonnull FilterStats stats) {
+            this.link = link;
+            this.filter = filter;
+            this.stats = stats;
+        }
+
+        @Nonnull
+        private String getTypeName() {
+            Loadable.Type type = this.filter.getClass().getAnnotation(Loadable.Type.class);
+            return (type == null) ? this.filter.getClass().getSimpleName() : type.name();
+        }
+    }
+
     private static Logger loggy;
     private static final String PERMISSION_RELOAD = "craftirc.reload";
+    private static final String PERMISSION_STATS = "craftirc.stats";
+    private static final String PERMISSION_FILTERS = "craftirc.filters";
+    private static final int TOP_FILTERS = 10;
 
     @Inject
     @ConfigDir(sharedRoot = false)
@@ -110,8 +139,59 @@ public final class CraftIRC {
                 })
                 .permission(PERMISSION_RELOAD)
                 .build();
+        CommandSpec statsSpec = CommandSpec.builder()
+                .executor((commandSource, commandContext) -> {
+                    EndpointManager endpointManager = this.endpointManager;
+                    LinkManager linkManager = this.linkManager;
+                    if (endpointManager == null || linkManager == null) {
+                        commandSource.sendMessage(Text.of(TextColors.RED, "CraftIRC is not running"));
+                        return CommandResult.success();
+                    }
+                    commandSource.sendMessage(Text.of(TextColors.AQUA, "Queued: ", TextColors.WHITE, endpointManager.getQueuedMessageCount(), TextColors.AQUA, " Dropped: ", TextColors.WHITE, endpointManager.getDroppedMessageCount()));
+                    for (Link link : linkManager.getLinks()) {
+                        commandSource.sendMessage(Text.of(TextColors.AQUA, link.getSource(), " -> ", link.getTarget(), " queue: ", TextColors.WHITE, link.getQueueLatency().getSummary(), TextColors.AQUA, " filter: ", TextColors.WHITE, link.getFilterLatency().getSummary()));
+                    }
+                    for (Endpoint endpoint : endpointManager.getEndpoints()) {
+                        commandSource.sendMessage(Text.of(TextColors.AQUA, endpoint.getName(), " delivery: ", TextColors.WHITE, endpoint.getDeliveryLatency().getSummary()));
+                    }
+                    BotManager botManager = this.botManager;
+                    if (botManager != null) {
+                        for (IRCBot bot : botManager.getBots()) {
+                            commandSource.sendMessage(Text.of(TextColors.AQUA, bot.getName(), " connections: ", TextColors.WHITE, bot.getConnectedCount(), "/", bot.getConnectionCount(), TextColors.AQUA, " send queue: ", TextColors.WHITE, bot.getQueuedMessageCount(), TextColors.AQUA, " merged: ", TextColors.WHITE, bot.getMergedMessageCount(), TextColors.AQUA, " summarized: ", TextColors.WHITE, bot.getSummarizedMessageCount(), TextColors.AQUA, " dropped: ", TextColors.WHITE, bot.getDroppedMessageCount()));
+                        }
+                    }
+                    return CommandResult.success();
+                })
+                .permission(PERMISSION_STATS)
+                .build();
+        CommandSpec filtersSpec = CommandSpec.builder()
+                .executor((commandSource, commandContext) -> {
+                    LinkManager linkManager = this.linkManager;
+                    if (linkManager == null) {
+                        commandSource.sendMessage(Text.of(TextColors.RED, "CraftIRC is not running"));
+                        return CommandResult.success();
+                    }
+                    List<FilterReport> reports = new ArrayList<>();
+                    for (Link link : linkManager.getLinks()) {
+                        link.getFilterStats().forEach((filter, stats) -> reports.add(new FilterReport(link, filter, stats)));
+                    }
+                    if (reports.isEmpty()) {
+                        commandSource.sendMessage(Text.of(TextColors.AQUA, "No filters configured"));
+                        return CommandResult.success();
+                    }
+                    reports.sort(Comparator.comparingDouble((FilterReport report) -> report.stats.getEstimatedTotalNanos()).reversed());
+                    commandSource.sendMessage(Text.of(TextColors.AQUA, "Top filters by time, of ", TextColors.WHITE, reports.size(), TextColors.AQUA, ":"));
+                    for (FilterReport report : reports.subList(0, Math.min(TOP_FILTERS, reports.size()))) {
+                        commandSource.sendMessage(Text.of(TextColors.AQUA, report.link.getSource(), " -> ", report.link.getTarget(), " ", report.getTypeName(), ": ", TextColors.WHITE, report.stats.getSummary()));
+                    }
+                    return CommandResult.success();
+                })
+                .permission(PERMISSION_FILTERS)
+                .build();
         CommandSpec mainSpec = CommandSpec.builder()
                 .child(reloadSpec, "reload")
+                .child(statsSpec, "stats")
+                .child(filtersSpec, "filters")
                 .executor((commandSource, commandContext) -> {
                     commandSource.sendMessage(Text.of(TextColors.AQUA, "CraftIRC version ", TextColors.WHITE, this.version, TextColors.AQUA, " - Powered by Kittens"));
                     return CommandResult.success();
@@ -153,6 +233,7 @@ public final class CraftIRC {
             }
 
             ConfigurationNode repeatableFilters = root.getNode("repeatable-filters");
+            ConfigurationNode dispatch = root.getNode("dispatch");
 
             ConfigurationNode botsNode = root.getNode("bots");
             List<? extends ConfigurationNode> bots;
@@ -172,10 +253,15 @@ public final class CraftIRC {
                 throw new CraftIRCInvalidConfigException("No links defined! How can your endpoints be useful?");
             }
 
+            PermissionCache permissionCache = new PermissionCache(this);
+            this.game.getEventManager().registerListeners(this, permissionCache);
+            this.trackShutdownable(() -> this.game.getEventManager().unregisterListeners(permissionCache));
+            this.permissionCache = permissionCache;
             this.filterManager = new FilterManager(this, repeatableFilters);
             this.botManager = new BotManager(this, bots);
-            this.endpointManager = new EndpointManager(this, endpoints);
+            this.endpointManager = new EndpointManager(this, dispatch, endpoints);
             this.linkManager = new LinkManager(this, links);
+            this.endpointManager.loadRoutes(this.linkManager);
         } catch (Exception e) {
             this.logger.error("Uh oh", new CraftIRCUnableToStartException("Could not start CraftIRC!", e));
             this.dontMakeAGrownManCry();
@@ -208,6 +294,7 @@ public final class CraftIRC {
     private BotManager botManager;
     private EndpointManager endpointManager;
     private FilterManager filterManager;
+    private PermissionCache permissionCache;
     private LinkManager linkManager;
     private final Set<Shutdownable> shutdownables = new CopyOnWriteArraySet<>();
 
@@ -226,6 +313,11 @@ public final class CraftIRC {
         return this.filterManager;
     }
 
+    @Nonnull
+    public PermissionCache getPermissionCache() {
+        return this.permissionCache;
+    }
+
     @Nonnull
     public LinkManager getLinkManager() {
         return this.linkManager;
@@ -0,0 +1,226 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.endpoint;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A lock-based bounded queue of messages awaiting distribution or
+ * delivery, supporting all {@link MessageQueue.OverflowPolicy} choices.
+ * <p/>
+ * Each {@link Message.Category} is queued separately and drained by
+ * weighted round robin, so a backlog of one class cannot starve the
+ * others. Messages of the same class keep their order. Actions share the
+ * chat queue, so a sender's actions and chat also stay in order. Capacity
+ * is shared by all classes.
+ * <p/>
+ * Used both for the dispatch queue and for each Endpoint's delivery
+ * backlog, where messages wait when an Endpoint falls behind.
+ * <p/>
+ * When full, {@link OverflowPolicy#DROP_OLDEST} drops the oldest message
+ * of the arriving message's class, or of the least important queued class
+ * if that class has nothing queued.
+ *
+ * @param <E> type of queued element
+ */
+final class BoundedMessageQueue<E> extends MessageQueue<E> {
+    private static final Message.Category[] CATEGORIES = Message.Category.values();
+    /**
+     * Queue index of each category, by ordinal.
+     */
+    private static final int[] LANES = new int[CATEGORIES.length];
+    private static final int LANE_COUNT;
+
+    static {
+        int lane = 0;
+        for (Message.Category category : CATEGORIES) {
+            LANES[category.ordinal()] = (category == Message.Category.ACTION) ? LANES[Message.Category.CHAT.ordinal()] : lane++;
+        }
+        LANE_COUNT = lane;
+    }
+
+    private final ArrayDeque<E>[] queues;
+    private final int[] weights;
+    private final Function<? super E, Message.Category> categories;
+    private final OverflowPolicy policy;
+    private final long blockNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = this.lock.newCondition();
+    private final Condition notFull = this.lock.newCondition();
+    private int size = 0;
+    private int current = 0;
+    private int credit;
+
+    /**
+     * Creates a queue.
+     *
+     * @param description what the queue holds, for warnings
+     * @param capacity most messages held across all classes
+     * @param policy overflow policy
+     * @param blockMillis longest a producer waits under the block policy
+     * @param weights messages taken from each class, indexed by category
+     * ordinal, before moving on to the next class. Actions use the chat
+     * weight.
+     * @param categories gets the class of an element
+     */
+    @SuppressWarnings("unchecked")
+    BoundedMessageQueue(@Nonnull String description, int capacity, @Nonnull OverflowPolicy policy, long blockMillis, @Nonnull int[] weights, @Nonnull Function<? super E, Message.Category> categories) {
+        super(description, capacity);
+        this.categories = categories;
+        this.policy = policy;
+        this.blockNanos = TimeUnit.MILLISECONDS.toNanos(blockMillis);
+        this.queues = new ArrayDeque[LANE_COUNT];
+        this.weights = new int[LANE_COUNT];
+        for (int i = 0; i < LANE_COUNT; i++) {
+            this.queues[i] = new ArrayDeque<>();
+        }
+        for (Message.Category category : CATEGORIES) {
+            if (category != Message.Category.ACTION) {
+                this.weights[LANES[category.ordinal()]] = Math.max(1, weights[category.ordinal()]);
+            }
+        }
+        this.credit = this.weights[0];
+    }
+
+    @Override
+    void add(@Nonnull E element) {
+        Message.Category category = this.categories.apply(element);
+        boolean accepted = true;
+        this.lock.lock();
+        try {
+            if (this.size >= this.getCapacity()) {
+                switch (this.policy) {
+                    case DROP_OLDEST:
+                        ArrayDeque<E> own = this.queues[LANES[category.ordinal()]];
+                        if (own.isEmpty()) {
+                            this.evictLeastImportant(CATEGORIES[0]);
+                        } else {
+                            own.poll();
+                            this.size--;
+                            this.drop();
+                        }
+                        break;
+                    case DROP_CATEGORY:
+                        if (!this.evictLeastImportant(category)) {
+                            accepted = false;
+                        }
+                        break;
+                    case BLOCK:
+                        long nanos = this.blockNanos;
+                        try {
+                            while (this.size >= this.getCapacity() && nanos > 0) {
+                                nanos = this.notFull.awaitNanos(nanos);
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        accepted = this.size < this.getCapacity();
+                        break;
+                    case DROP_NEWEST:
+                    default:
+                        accepted = false;
+                }
+            }
+            if (accepted) {
+                this.queues[LANES[category.ordinal()]].add(element);
+                this.size++;
+                this.notEmpty.signal();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        if (!accepted) {
+            this.drop();
+        }
+    }
+
+    @Override
+    void drainTo(@Nonnull List<E> batch, int max) throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            while (this.size == 0) {
+                this.notEmpty.await();
+            }
+            this.take(batch, max);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    void poll(@Nonnull List<E> batch, int max) {
+        this.lock.lock();
+        try {
+            this.take(batch, max);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    @Override
+    int size() {
+        this.lock.lock();
+        try {
+            return this.size;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void take(@Nonnull List<E> batch, int max) {
+        int taken = 0;
+        while (taken < max && this.size > 0) {
+            ArrayDeque<E> queue = this.queues[this.current];
+            if (this.credit > 0 && !queue.isEmpty()) {
+                batch.add(queue.poll());
+                this.credit--;
+                this.size--;
+                taken++;
+            } else {
+                this.current = (this.current + 1) % this.queues.length;
+                this.credit = this.weights[this.current];
+            }
+        }
+        if (taken > 0) {
+            this.notFull.signalAll();
+        }
+    }
+
+    private boolean evictLeastImportant(@Nonnull Message.Category incoming) {
+        for (int i = this.queues.length - 1; i >= LANES[incoming.ordinal()]; i--) {
+            if (this.queues[i].poll() != null) {
+                this.size--;
+                this.drop();
+                return true;
+            }
+        }
+        return false;
+    }
+}
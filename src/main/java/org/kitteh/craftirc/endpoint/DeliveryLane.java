@@ -0,0 +1,171 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.endpoint;
+
+import org.kitteh.craftirc.CraftIRC;
+import org.kitteh.craftirc.endpoint.link.Link;
+import org.kitteh.irc.client.library.util.Pair;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A serial lane of deliveries to a single {@link Endpoint}.
+ * <p/>
+ * Each lane runs on a shared executor but never runs on more than one
+ * thread at a time, so an Endpoint receives messages one batch at a time
+ * while other Endpoints are served in parallel.
+ * <p/>
+ * Each run hands up to one batch of messages to the Endpoint at once via
+ * {@link Endpoint#receiveMessages(List)}.
+ * <p/>
+ * Messages waiting for the Endpoint are held in a bounded
+ * {@link MessageQueue}, which applies the configured overflow policy when
+ * the Endpoint falls behind. With the queue engine, the backlog is where
+ * class weights matter most: chat waiting for a slow Endpoint is taken
+ * ahead of a pile of joins and quits, while each class keeps its order.
+ */
+final class DeliveryLane implements Runnable {
+    private final Endpoint endpoint;
+    private final Executor executor;
+    private final int batchSize;
+    private final List<Pair<Link, Message>> staged = new ArrayList<>();
+    private final MessageQueue<Pair<Link, Message>> backlog;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    DeliveryLane(@Nonnull Endpoint endpoint, @Nonnull Executor executor, @Nonnull MessageQueue.Factory queues, int capacity, int batchSize) {
+        this.endpoint = endpoint;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.backlog = queues.create("Delivery backlog for Endpoint '" + endpoint.getName() + "'", capacity, delivery -> delivery.getRight().getCategory());
+    }
+
+    /**
+     * Stages a message for delivery over a link to this lane's Endpoint.
+     * Staged messages are not delivered until {@link #flush()} is called.
+     * Only to be called from the distributing thread.
+     *
+     * @param message message to deliver
+     * @param link link over which the message travels
+     * @return true if this is the first message staged since the last flush
+     */
+    boolean stage(@Nonnull Message message, @Nonnull Link link) {
+        this.staged.add(new Pair<>(link, message));
+        return this.staged.size() == 1;
+    }
+
+    /**
+     * Hands all staged messages to the lane's backlog for delivery. Only to
+     * be called from the distributing thread.
+     */
+    void flush() {
+        for (Pair<Link, Message> delivery : this.staged) {
+            this.backlog.add(delivery);
+        }
+        this.staged.clear();
+        this.schedule();
+    }
+
+    /**
+     * Gets the number of messages waiting for delivery.
+     *
+     * @return backlog size
+     */
+    int getBacklog() {
+        return this.backlog.size();
+    }
+
+    /**
+     * Gets the number of messages dropped because the backlog was full.
+     *
+     * @return dropped message count
+     */
+    long getDroppedCount() {
+        return this.backlog.getDroppedCount();
+    }
+
+    @Override
+    public void run() {
+        try {
+            List<Pair<Link, Message>> deliveries = new ArrayList<>(this.batchSize);
+            this.backlog.poll(deliveries, this.batchSize);
+            List<TargetedMessage> batch = new ArrayList<>(deliveries.size());
+            for (Pair<Link, Message> delivery : deliveries) {
+                try {
+                    TargetedMessage message = this.endpoint.prepareMessage(delivery.getRight(), delivery.getLeft());
+                    if (message != null) {
+                        batch.add(message);
+                    }
+                } catch (Throwable thrown) {
+                    CraftIRC.log().warn("Unable to prepare a message for Endpoint '" + this.endpoint.getName() + "'", thrown);
+                }
+            }
+            if (!batch.isEmpty()) {
+                this.deliver(batch);
+            }
+        } finally {
+            this.scheduled.set(false);
+        }
+        if (this.backlog.size() > 0) {
+            this.schedule();
+        }
+    }
+
+    /**
+     * Delivers a batch. The Endpoint skips messages it fails on, so a
+     * batch which still fails as a whole is logged and not retried, which
+     * would show messages already delivered twice.
+     */
+    private void deliver(@Nonnull List<TargetedMessage> batch) {
+        try {
+            this.endpoint.receiveMessages(batch);
+        } catch (Throwable thrown) {
+            CraftIRC.log().warn("Unable to deliver a batch of messages to Endpoint '" + this.endpoint.getName() + "'", thrown);
+            return;
+        }
+        long now = System.nanoTime();
+        for (TargetedMessage message : batch) {
+            this.recordLatency(message, now);
+        }
+    }
+
+    private void recordLatency(@Nonnull TargetedMessage message, long now) {
+        this.endpoint.getDeliveryLatency().record(now - message.getOriginatingMessage().getQueuedNanos());
+    }
+
+    private void schedule() {
+        if (this.scheduled.compareAndSet(false, true)) {
+            try {
+                this.executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                this.scheduled.set(false);
+            }
+        }
+    }
+}
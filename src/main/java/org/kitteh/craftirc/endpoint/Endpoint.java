@@ -27,9 +27,12 @@ import ninja.leaping.configurate.ConfigurationNode;
 import org.kitteh.craftirc.CraftIRC;
 import org.kitteh.craftirc.endpoint.link.Link;
 import org.kitteh.craftirc.exceptions.CraftIRCInvalidConfigException;
+import org.kitteh.craftirc.util.LatencyHistogram;
 import org.kitteh.craftirc.util.loadable.Loadable;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.List;
 
 /**
  * Endpoints are the origin and destination of messages tracked by CraftIRC.
@@ -38,16 +41,17 @@ public abstract class Endpoint extends Loadable {
     /**
      * Constant defining the message data value "MESSAGE_FORMAT".
      */
-    public static final String MESSAGE_FORMAT = "MESSAGE_FORMAT";
+    public static final MessageKey<String> MESSAGE_FORMAT = MessageKey.of("MESSAGE_FORMAT", String.class);
     /**
      * Constant defining the message data value "MESSAGE_TEXT".
      */
-    public static final String MESSAGE_TEXT = "MESSAGE_TEXT";
+    public static final MessageKey<String> MESSAGE_TEXT = MessageKey.of("MESSAGE_TEXT", String.class);
     /**
      * Constant defining the message data value "SENDER_NAME".
      */
-    public static final String SENDER_NAME = "SENDER_NAME";
+    public static final MessageKey<String> SENDER_NAME = MessageKey.of("SENDER_NAME", String.class);
 
+    private final LatencyHistogram deliveryLatency = new LatencyHistogram();
     private String name;
 
     /**
@@ -60,6 +64,17 @@ public abstract class Endpoint extends Loadable {
         return this.name;
     }
 
+    /**
+     * Gets the time taken for messages to this Endpoint from being queued
+     * to being handled as received.
+     *
+     * @return end-to-end delivery latency
+     */
+    @Nonnull
+    public final LatencyHistogram getDeliveryLatency() {
+        return this.deliveryLatency;
+    }
+
     /**
      * Optional method to load any additional information for this Endpoint.
      * <p/>
@@ -103,19 +118,45 @@ public abstract class Endpoint extends Loadable {
     protected abstract void receiveMessage(@Nonnull TargetedMessage message);
 
     /**
-     * Receive a message and process.
+     * We get signal, several times over.
+     * <p/>
+     * Messages received here have been processed by filters and are not
+     * rejected by them. By default, each message is passed in order to
+     * {@link #receiveMessage(TargetedMessage)}, and a message which fails
+     * is logged and skipped. Endpoints able to handle several messages
+     * more efficiently at once may override this.
+     * <p/>
+     * A batch is never retried, as messages already displayed would be
+     * shown twice. Overrides should likewise skip only the messages they
+     * fail to deliver, rather than throw and lose the rest of the batch.
+     *
+     * @param messages the messages to be displayed, in order
+     */
+    protected void receiveMessages(@Nonnull List<TargetedMessage> messages) {
+        for (TargetedMessage message : messages) {
+            try {
+                this.receiveMessage(message);
+            } catch (Throwable thrown) {
+                CraftIRC.log().warn("Unable to deliver a message to Endpoint '" + this.getName() + "'", thrown);
+            }
+        }
+    }
+
+    /**
+     * Prepares a received message for display.
      * <p/>
      * Sequence of events:
      * <ol>
      * <li>Pre-process</li>
      * <li>Run through filters, stop if rejected</li>
-     * <li>Handle as received</li>
      * </ol>
      *
      * @param message the message sent by the source
      * @param link the link over which this message is sent
+     * @return the message to be handled as received, or null if rejected
      */
-    final void receiveMessage(@Nonnull Message message, @Nonnull Link link) {
+    @Nullable
+    final TargetedMessage prepareMessage(@Nonnull Message message, @Nonnull Link link) {
         TargetedMessage targetedMessage = new TargetedMessage(this, message);
         try {
             this.preProcessReceivedMessage(targetedMessage);
@@ -124,8 +165,8 @@ public abstract class Endpoint extends Loadable {
         }
         link.filterMessage(targetedMessage);
         if (targetedMessage.isRejected()) {
-            return;
+            return null;
         }
-        this.receiveMessage(targetedMessage);
+        return targetedMessage;
     }
 }
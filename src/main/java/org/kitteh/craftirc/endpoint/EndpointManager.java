@@ -27,33 +27,101 @@ import ninja.leaping.configurate.ConfigurationNode;
 import org.kitteh.craftirc.CraftIRC;
 import org.kitteh.craftirc.endpoint.defaults.IRCEndpoint;
 import org.kitteh.craftirc.endpoint.link.Link;
+import org.kitteh.craftirc.endpoint.link.LinkManager;
 import org.kitteh.craftirc.exceptions.CraftIRCInvalidConfigException;
 import org.kitteh.craftirc.util.loadable.LoadableTypeManager;
-import org.kitteh.irc.client.library.util.Pair;
 
 import javax.annotation.Nonnull;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Maintains {@link Endpoint}s and classes corresponding to Endpoint types.
  */
 public final class EndpointManager extends LoadableTypeManager<Endpoint> {
+    /**
+     * A resolved destination for messages from a source Endpoint.
+     */
+    static final class Route {
+        private final Link link;
+        private final Endpoint endpoint;
+
+        private Route(@Nonnull Link link, @Nonnull Endpoint endpoint) {
+            this.link = link;
+            this.endpoint = endpoint;
+        }
+
+        @Nonnull
+        Link getLink() {
+            return this.link;
+        }
+
+        @Nonnull
+        Endpoint getEndpoint() {
+            return this.endpoint;
+        }
+    }
+
+    private static final Route[] NO_ROUTES = new Route[0];
+
     private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
     private final MessageDistributor messageDistributor;
+    private volatile LinkManager linkManager;
+    private volatile Map<String, Route[]> routes = Collections.emptyMap();
 
     /**
      * Initialized by {@link CraftIRC} main.
      *
      * @param plugin the CraftIRC instance
+     * @param dispatch message dispatch settings
      * @param endpoints a list of endpoint data to load
+     * @throws CraftIRCInvalidConfigException if dispatch settings are invalid
      */
-    public EndpointManager(@Nonnull CraftIRC plugin, @Nonnull List<? extends ConfigurationNode> endpoints) {
+    public EndpointManager(@Nonnull CraftIRC plugin, @Nonnull ConfigurationNode dispatch, @Nonnull List<? extends ConfigurationNode> endpoints) throws CraftIRCInvalidConfigException {
         super(plugin, Endpoint.class);
-        this.messageDistributor = new MessageDistributor(this, plugin);
+        int threads = dispatch.getNode("threads").getInt(Runtime.getRuntime().availableProcessors());
+        ConfigurationNode queue = dispatch.getNode("queue");
+        int capacity = queue.getNode("capacity").getInt(10000);
+        if (capacity < 1) {
+            throw new CraftIRCInvalidConfigException("Dispatch queue capacity must be at least 1");
+        }
+        MessageQueue.OverflowPolicy overflow = MessageQueue.OverflowPolicy.getByName(queue.getNode("overflow").getString("drop-oldest"));
+        if (overflow == null) {
+            throw new CraftIRCInvalidConfigException("Invalid dispatch queue overflow policy. Valid policies: " + MessageQueue.OverflowPolicy.getNames());
+        }
+        int laneCapacity = queue.getNode("lane-capacity").getInt(1000);
+        if (laneCapacity < 1) {
+            throw new CraftIRCInvalidConfigException("Dispatch queue lane-capacity must be at least 1");
+        }
+        long blockMillis = queue.getNode("block-millis").getLong(50);
+        int[] weights;
+        String engine = dispatch.getNode("engine").getString("queue");
+        switch (engine.toLowerCase()) {
+            case "queue":
+                ConfigurationNode weightsNode = dispatch.getNode("weights");
+                weights = new int[Message.Category.values().length];
+                for (Message.Category category : Message.Category.values()) {
+                    weights[category.ordinal()] = weightsNode.getNode(category.name().toLowerCase()).getInt(category == Message.Category.PRESENCE ? 1 : 4);
+                }
+                break;
+            case "ring":
+                if (overflow != MessageQueue.OverflowPolicy.DROP_NEWEST && overflow != MessageQueue.OverflowPolicy.BLOCK) {
+                    CraftIRC.log().warn("Ring dispatch engine only supports drop-newest or block overflow, using drop-newest");
+                    overflow = MessageQueue.OverflowPolicy.DROP_NEWEST;
+                }
+                weights = null;
+                break;
+            default:
+                throw new CraftIRCInvalidConfigException("Invalid dispatch engine '" + engine + "'. Valid engines: queue, ring");
+        }
+        MessageQueue.Factory queues = new MessageQueue.Factory(overflow, blockMillis, weights);
+        int batchSize = dispatch.getNode("batch-size").getInt(64);
+        this.messageDistributor = new MessageDistributor(this, plugin, queues, capacity, laneCapacity, Math.max(1, threads), Math.max(1, batchSize));
         // We register ours first.
         this.registerType(IRCEndpoint.class);
 
@@ -66,26 +134,84 @@ public final class EndpointManager extends LoadableTypeManager<Endpoint> {
      * @param message message to be sent
      */
     public void sendMessage(@Nonnull Message message) {
+        message.setQueuedNanos(System.nanoTime());
         this.messageDistributor.addMessage(message);
     }
 
     /**
-     * Gets the Endpoint destinations of a named source Endpoint
+     * Gets all loaded Endpoints.
+     *
+     * @return an unmodifiable view of the loaded Endpoints
+     */
+    @Nonnull
+    public Collection<Endpoint> getEndpoints() {
+        return Collections.unmodifiableCollection(this.endpoints.values());
+    }
+
+    /**
+     * Gets the number of messages dropped because the dispatch queue or an
+     * Endpoint's delivery backlog was full.
+     *
+     * @return dropped message count
+     */
+    public long getDroppedMessageCount() {
+        return this.messageDistributor.getDroppedCount();
+    }
+
+    /**
+     * Gets the number of messages waiting for dispatch or delivery. A
+     * message waiting for several Endpoints counts once for each.
+     *
+     * @return queued message count
+     */
+    public int getQueuedMessageCount() {
+        return this.messageDistributor.getQueueSize();
+    }
+
+    /**
+     * Sets the links over which messages are routed and builds the routing
+     * table from them.
+     *
+     * @param linkManager the loaded links
+     */
+    public void loadRoutes(@Nonnull LinkManager linkManager) {
+        this.linkManager = linkManager;
+        this.buildRoutes();
+    }
+
+    /**
+     * Gets the Endpoint destinations of a named source Endpoint.
+     * <p/>
+     * The returned array is shared and must not be modified.
      *
      * @param source source Endpoint
-     * @return destinations of a message send by the speciified Endpoint
+     * @return destinations of a message sent by the specified Endpoint
      */
     @Nonnull
-    Set<Pair<Link, Endpoint>> getDestinations(@Nonnull String source) {
-        Set<Pair<Link, Endpoint>> destinations = new HashSet<>();
-        List<Link> links = this.getCraftIRC().getLinkManager().getLinks(source);
-        for (Link link : links) {
-            Endpoint endpoint = this.endpoints.get(link.getTarget());
-            if (endpoint != null) {
-                destinations.add(new Pair<>(link, endpoint));
+    Route[] getDestinations(@Nonnull String source) {
+        Route[] destinations = this.routes.get(source);
+        return destinations == null ? NO_ROUTES : destinations;
+    }
+
+    private synchronized void buildRoutes() {
+        LinkManager linkManager = this.linkManager;
+        if (linkManager == null) {
+            return;
+        }
+        Map<String, Route[]> routes = new HashMap<>();
+        for (String source : this.endpoints.keySet()) {
+            List<Route> destinations = new ArrayList<>();
+            for (Link link : linkManager.getLinks(source)) {
+                Endpoint endpoint = this.endpoints.get(link.getTarget());
+                if (endpoint != null) {
+                    destinations.add(new Route(link, endpoint));
+                }
+            }
+            if (!destinations.isEmpty()) {
+                routes.put(source, destinations.toArray(new Route[destinations.size()]));
             }
         }
-        return destinations;
+        this.routes = Collections.unmodifiableMap(routes);
     }
 
     @Override
@@ -95,6 +221,7 @@ public final class EndpointManager extends LoadableTypeManager<Endpoint> {
             throw new CraftIRCInvalidConfigException("Duplicate Endpoint name '" + name + "'");
         }
         this.endpoints.put(name, endpoint);
+        this.buildRoutes();
     }
 
     @Override
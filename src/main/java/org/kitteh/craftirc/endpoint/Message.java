@@ -23,52 +23,302 @@
  */
 package org.kitteh.craftirc.endpoint;
 
+import org.kitteh.craftirc.util.MatchCache;
+import org.kitteh.irc.client.library.util.Sanity;
+
 import javax.annotation.Nonnull;
-import java.util.Collections;
-import java.util.HashMap;
+import javax.annotation.Nullable;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * Defines a message.
  * <p/>
  * Messages are immutable, created by their originating {@link Endpoint}.
+ * Prefer {@link #builder()}, which hands its data over to the
+ * message without copying it.
  */
 public final class Message {
-    private final Map<String, Object> data;
-    private final String defaultMessage;
+    /**
+     * Builds messages.
+     * <p/>
+     * Once {@link #build()} is called the data is frozen and handed to the
+     * message, and no more data may be added. The builder may still build
+     * further messages, from other sources or with other default messages,
+     * all sharing the same frozen data.
+     */
+    public static final class Builder {
+        private Endpoint source;
+        private Category category = Category.CHAT;
+        private String defaultMessage;
+        private Supplier<String> defaultMessageRenderer;
+        private MessageData data = new MessageData();
+        private boolean frozen;
+
+        private Builder() {
+        }
+
+        /**
+         * Sets the originator of the message. Required.
+         *
+         * @param source originator
+         * @return this builder
+         */
+        @Nonnull
+        public Builder source(@Nonnull Endpoint source) {
+            this.source = Sanity.nullCheck(source, "Source cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the class of message. Defaults to {@link Category#CHAT}.
+         *
+         * @param category message category
+         * @return this builder
+         */
+        @Nonnull
+        public Builder category(@Nonnull Category category) {
+            this.category = Sanity.nullCheck(category, "Category cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the default message. Required.
+         *
+         * @param defaultMessage the default message
+         * @return this builder
+         */
+        @Nonnull
+        public Builder defaultMessage(@Nonnull String defaultMessage) {
+            this.defaultMessage = Sanity.nullCheck(defaultMessage, "Default message cannot be null");
+            this.defaultMessageRenderer = null;
+            return this;
+        }
+
+        /**
+         * Sets the default message to be rendered when first read, if ever.
+         * Either this or {@link #defaultMessage(String)} is required.
+         * <p/>
+         * The renderer may be called more than once if read concurrently,
+         * so it should always return the same message.
+         *
+         * @param renderer supplier of the default message
+         * @return this builder
+         */
+        @Nonnull
+        public Builder defaultMessage(@Nonnull Supplier<String> renderer) {
+            this.defaultMessageRenderer = Sanity.nullCheck(renderer, "Default message renderer cannot be null");
+            this.defaultMessage = null;
+            return this;
+        }
+
+        /**
+         * Adds a piece of data.
+         *
+         * @param key data key
+         * @param value data value
+         * @param <Type> value type
+         * @return this builder
+         * @throws IllegalStateException if a message has already been built
+         */
+        @Nonnull
+        public <Type> Builder data(@Nonnull MessageKey<Type> key, @Nullable Type value) {
+            this.checkNotFrozen();
+            this.data.put(key, value);
+            return this;
+        }
+
+        /**
+         * Adds a piece of data by name, for names which may not have a
+         * registered {@link MessageKey}.
+         *
+         * @param name data name
+         * @param value data value
+         * @return this builder
+         * @throws IllegalArgumentException if the name belongs to a
+         * registered key and the value is of the wrong type
+         * @throws IllegalStateException if a message has already been built
+         */
+        @Nonnull
+        public Builder data(@Nonnull String name, @Nullable Object value) {
+            this.checkNotFrozen();
+            this.data.put(name, value);
+            return this;
+        }
+
+        /**
+         * Builds a message, freezing the data added so far.
+         *
+         * @return a new message
+         * @throws IllegalStateException if no source or default message is
+         * set
+         */
+        @Nonnull
+        public Message build() {
+            if (this.source == null) {
+                throw new IllegalStateException("Source must be set");
+            }
+            if ((this.defaultMessage == null) && (this.defaultMessageRenderer == null)) {
+                throw new IllegalStateException("Default message must be set");
+            }
+            if (!this.frozen) {
+                this.data.freeze();
+                this.frozen = true;
+            }
+            return new Message(this);
+        }
+
+        private void checkNotFrozen() {
+            if (this.frozen) {
+                throw new IllegalStateException("Cannot add data after building a message");
+            }
+        }
+    }
+
+    /**
+     * Creates a builder for messages.
+     *
+     * @return a new builder
+     */
+    @Nonnull
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Broad classes of message, declared from most to least important.
+     */
+    public enum Category {
+        /**
+         * Messages generated by CraftIRC or the server itself.
+         */
+        SYSTEM,
+        /**
+         * Regular chat.
+         */
+        CHAT,
+        /**
+         * Actions, such as /me.
+         */
+        ACTION,
+        /**
+         * Joins, quits and the like.
+         */
+        PRESENCE
+    }
+
+    private final Category category;
+    private final MessageData data;
+    private volatile String defaultMessage;
+    private final Supplier<String> defaultMessageRenderer;
     private final Endpoint source;
+    private volatile long queuedNanos;
+    private volatile MatchCache matchCache;
 
     /**
-     * Creates a new message.
+     * Creates a new chat message.
      *
      * @param source originator of this message
      * @param defaultMessage this default message
      * @param data all associated data
      */
     public Message(@Nonnull Endpoint source, @Nonnull String defaultMessage, @Nonnull Map<String, Object> data) {
+        this(source, Category.CHAT, defaultMessage, data);
+    }
+
+    /**
+     * Creates a new message.
+     *
+     * @param source originator of this message
+     * @param category class of message
+     * @param defaultMessage this default message
+     * @param data all associated data
+     */
+    public Message(@Nonnull Endpoint source, @Nonnull Category category, @Nonnull String defaultMessage, @Nonnull Map<String, Object> data) {
         this.source = source;
+        this.category = category;
         this.defaultMessage = defaultMessage;
-        this.data = Collections.unmodifiableMap(new HashMap<>(data));
+        this.defaultMessageRenderer = null;
+        this.data = new MessageData();
+        data.forEach(this.data::put);
+        this.data.freeze();
+    }
+
+    private Message(@Nonnull Builder builder) {
+        this.source = builder.source;
+        this.category = builder.category;
+        this.defaultMessage = builder.defaultMessage;
+        this.defaultMessageRenderer = builder.defaultMessageRenderer;
+        this.data = builder.data;
+    }
+
+    /**
+     * Gets the class of this message.
+     *
+     * @return the message category
+     */
+    @Nonnull
+    public Category getCategory() {
+        return this.category;
     }
 
     /**
      * Gets the message's data.
      *
-     * @return an immutable map representing the data
+     * @return the data, which cannot be modified
      */
     @Nonnull
-    public Map<String, Object> getData() {
+    public MessageData getData() {
         return this.data;
     }
 
     /**
-     * Gets the default message as created by the source {@link Endpoint}.
+     * Gets the default message as created by the source {@link Endpoint},
+     * rendering it if not yet rendered.
      *
      * @return the default message
      */
     @Nonnull
     public String getDefaultMessage() {
-        return this.defaultMessage;
+        String defaultMessage = this.defaultMessage;
+        if (defaultMessage == null) {
+            defaultMessage = Sanity.nullCheck(this.defaultMessageRenderer.get(), "Rendered default message cannot be null");
+            this.defaultMessage = defaultMessage;
+        }
+        return defaultMessage;
+    }
+
+    /**
+     * Gets the regular expression results remembered for this message,
+     * shared by every link and filter handling it.
+     *
+     * @return match cache
+     */
+    @Nonnull
+    public MatchCache getMatchCache() {
+        MatchCache matchCache = this.matchCache;
+        if (matchCache == null) {
+            synchronized (this) {
+                matchCache = this.matchCache;
+                if (matchCache == null) {
+                    this.matchCache = matchCache = new MatchCache();
+                }
+            }
+        }
+        return matchCache;
+    }
+
+    /**
+     * Gets when this message was queued for delivery.
+     *
+     * @return {@link System#nanoTime()} at queueing, or 0 if not queued
+     */
+    public long getQueuedNanos() {
+        return this.queuedNanos;
+    }
+
+    void setQueuedNanos(long queuedNanos) {
+        this.queuedNanos = queuedNanos;
     }
 
     /**
@@ -0,0 +1,319 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.endpoint;
+
+import org.kitteh.irc.client.library.util.Sanity;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Data attached to a message.
+ * <p/>
+ * Values under registered {@link MessageKey}s live in an array indexed by
+ * the key's slot. Names with no registered key, such as groups stored by
+ * a regex filter, fall back to a map. If a key is registered for a name
+ * after a value was stored under it in the map, the value is still found
+ * through the key, and moves to the key's slot when next written.
+ * <p/>
+ * Copies made for a {@link TargetedMessage} read through to the original's
+ * array. Values written to a copy go in a small overlay of slots and
+ * values, allocated on first write, so a copy only pays for what it
+ * changes. The original must not change while copied.
+ */
+public final class MessageData {
+    private static final int INITIAL_OVERRIDES = 4;
+
+    private Object[] values;
+    private final boolean copy;
+    private int[] overrideSlots;
+    private Object[] overrideValues;
+    private int overrides;
+    private int count;
+    private Map<String, Object> extra;
+    private boolean sharedExtra;
+    private boolean frozen;
+
+    MessageData() {
+        this.values = new Object[MessageKey.getSlotCount()];
+        this.copy = false;
+    }
+
+    private MessageData(@Nonnull MessageData source) {
+        this.copy = true;
+        if (source.overrides == 0) {
+            this.values = source.values;
+        } else {
+            // Flatten, so this copy reads through one array
+            this.values = Arrays.copyOf(source.values, Math.max(source.values.length, MessageKey.getSlotCount()));
+            for (int i = 0; i < source.overrides; i++) {
+                this.values[source.overrideSlots[i]] = source.overrideValues[i];
+            }
+        }
+        this.count = source.count;
+        this.extra = source.extra;
+        this.sharedExtra = true;
+    }
+
+    /**
+     * Gets the value stored under a key.
+     *
+     * @param key key
+     * @param <Type> value type
+     * @return the value, or null if not set
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public <Type> Type get(@Nonnull MessageKey<Type> key) {
+        Object value = this.getSlot(key.getSlot());
+        if (value == null && this.extra != null) {
+            // Stored by name before the key was registered
+            value = this.extra.get(key.getName());
+            if (value != null && !key.getType().isInstance(value)) {
+                value = null;
+            }
+        }
+        return (Type) value;
+    }
+
+    /**
+     * Gets the value stored under a name.
+     *
+     * @param name key name
+     * @return the value, or null if not set
+     */
+    @Nullable
+    public Object get(@Nonnull String name) {
+        MessageKey<?> key = MessageKey.get(name);
+        if (key != null) {
+            return this.get(key);
+        }
+        return (this.extra == null) ? null : this.extra.get(name);
+    }
+
+    /**
+     * Gets if a value is stored under a key.
+     *
+     * @param key key
+     * @return true if set
+     */
+    public boolean containsKey(@Nonnull MessageKey<?> key) {
+        return this.get(key) != null;
+    }
+
+    /**
+     * Gets if a value is stored under a name.
+     *
+     * @param name key name
+     * @return true if set
+     */
+    public boolean containsKey(@Nonnull String name) {
+        return this.get(name) != null;
+    }
+
+    /**
+     * Stores a value under a key.
+     *
+     * @param key key
+     * @param value value, or null to unset
+     * @param <Type> value type
+     * @return the previous value, or null if not set
+     * @throws UnsupportedOperationException if this data belongs to a
+     * {@link Message} rather than a {@link TargetedMessage}
+     */
+    @Nullable
+    public <Type> Type put(@Nonnull MessageKey<Type> key, @Nullable Type value) {
+        Sanity.nullCheck(key, "Key cannot be null");
+        this.checkWritable();
+        int slot = key.getSlot();
+        Object old;
+        if (this.copy) {
+            int index = this.indexOfOverride(slot);
+            if (index >= 0) {
+                old = this.overrideValues[index];
+                this.overrideValues[index] = value;
+            } else {
+                old = (slot < this.values.length) ? this.values[slot] : null;
+                this.addOverride(slot, value);
+            }
+        } else {
+            if (slot >= this.values.length) {
+                this.values = Arrays.copyOf(this.values, MessageKey.getSlotCount());
+            }
+            old = this.values[slot];
+            this.values[slot] = value;
+        }
+        if (old == null && value != null) {
+            this.count++;
+        } else if (old != null && value == null) {
+            this.count--;
+        }
+        if (this.extra != null && this.extra.containsKey(key.getName())) {
+            // Drop any value stored by name before the key was registered
+            this.unshareExtra();
+            Object stale = this.extra.remove(key.getName());
+            if (old == null && key.getType().isInstance(stale)) {
+                old = stale;
+            }
+        }
+        @SuppressWarnings("unchecked")
+        Type typed = (Type) old;
+        return typed;
+    }
+
+    /**
+     * Stores a value under a name.
+     *
+     * @param name key name
+     * @param value value, or null to unset
+     * @return the previous value, or null if not set
+     * @throws IllegalArgumentException if the name belongs to a registered
+     * key and the value is of the wrong type
+     * @throws UnsupportedOperationException if this data belongs to a
+     * {@link Message} rather than a {@link TargetedMessage}
+     */
+    @Nullable
+    public Object put(@Nonnull String name, @Nullable Object value) {
+        Sanity.nullCheck(name, "Name cannot be null");
+        MessageKey<?> key = MessageKey.get(name);
+        if (key != null) {
+            return this.putChecked(key, value);
+        }
+        this.checkWritable();
+        this.unshareExtra();
+        if (this.extra == null) {
+            if (value == null) {
+                return null;
+            }
+            this.extra = new HashMap<>();
+        }
+        return (value == null) ? this.extra.remove(name) : this.extra.put(name, value);
+    }
+
+    /**
+     * Gets the number of values set.
+     *
+     * @return value count
+     */
+    public int size() {
+        return this.count + ((this.extra == null) ? 0 : this.extra.size());
+    }
+
+    /**
+     * Performs an action for each value set, by key name.
+     *
+     * @param action action to perform
+     */
+    public void forEach(@Nonnull BiConsumer<String, Object> action) {
+        for (int slot = 0; slot < this.values.length; slot++) {
+            Object value = this.getSlot(slot);
+            if (value != null) {
+                action.accept(MessageKey.getBySlot(slot).getName(), value);
+            }
+        }
+        for (int i = 0; i < this.overrides; i++) {
+            // Keys registered after the original array was sized
+            if (this.overrideSlots[i] >= this.values.length && this.overrideValues[i] != null) {
+                action.accept(MessageKey.getBySlot(this.overrideSlots[i]).getName(), this.overrideValues[i]);
+            }
+        }
+        if (this.extra != null) {
+            this.extra.forEach(action);
+        }
+    }
+
+    /**
+     * Creates a copy of this data which reads through to this data, and
+     * keeps its own writes in an overlay.
+     *
+     * @return a writable copy
+     */
+    @Nonnull
+    MessageData copy() {
+        return new MessageData(this);
+    }
+
+    void freeze() {
+        this.frozen = true;
+    }
+
+    private <Type> Type putChecked(@Nonnull MessageKey<Type> key, @Nullable Object value) {
+        if ((value != null) && !key.getType().isInstance(value)) {
+            throw new IllegalArgumentException("Message key '" + key.getName() + "' requires " + key.getType().getSimpleName() + ", not " + value.getClass().getSimpleName());
+        }
+        @SuppressWarnings("unchecked")
+        Type typed = (Type) value;
+        return this.put(key, typed);
+    }
+
+    private void checkWritable() {
+        if (this.frozen) {
+            throw new UnsupportedOperationException("Message data cannot be modified");
+        }
+    }
+
+    @Nullable
+    private Object getSlot(int slot) {
+        int index = this.indexOfOverride(slot);
+        if (index >= 0) {
+            return this.overrideValues[index];
+        }
+        return (slot < this.values.length) ? this.values[slot] : null;
+    }
+
+    private int indexOfOverride(int slot) {
+        for (int i = 0; i < this.overrides; i++) {
+            if (this.overrideSlots[i] == slot) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void addOverride(int slot, @Nullable Object value) {
+        if (this.overrideSlots == null) {
+            this.overrideSlots = new int[INITIAL_OVERRIDES];
+            this.overrideValues = new Object[INITIAL_OVERRIDES];
+        } else if (this.overrides == this.overrideSlots.length) {
+            this.overrideSlots = Arrays.copyOf(this.overrideSlots, this.overrides * 2);
+            this.overrideValues = Arrays.copyOf(this.overrideValues, this.overrides * 2);
+        }
+        this.overrideSlots[this.overrides] = slot;
+        this.overrideValues[this.overrides] = value;
+        this.overrides++;
+    }
+
+    private void unshareExtra() {
+        if (this.sharedExtra) {
+            if (this.extra != null) {
+                this.extra = new HashMap<>(this.extra);
+            }
+            this.sharedExtra = false;
+        }
+    }
+}
@@ -24,63 +24,114 @@
 package org.kitteh.craftirc.endpoint;
 
 import org.kitteh.craftirc.CraftIRC;
-import org.kitteh.craftirc.endpoint.link.Link;
 import org.kitteh.craftirc.util.shutdownable.WackyWavingInterruptableArmFlailingThreadMan;
-import org.kitteh.irc.client.library.util.Pair;
 
 import javax.annotation.Nonnull;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Distributes messages.
  * <p/>
  * YOU GET A MESSAGE, AND YOU GET A MESSAGE! EVERYBODY GETS A MESSAGE!
+ * <p/>
+ * The distributor blocks until a message is available and then delivers
+ * it immediately, in the order messages were queued. Interrupting the
+ * thread stops distribution.
+ * <p/>
+ * Each destination {@link Endpoint} is fed through its own
+ * {@link DeliveryLane} on a shared worker pool, so a slow Endpoint only
+ * holds up its own messages.
+ * <p/>
+ * Messages are drained from the queue in batches, and each lane is handed
+ * its share of a batch at once so its Endpoint can process it in one go.
+ * Each lane holds its backlog in a bounded queue of its own, so a slow
+ * Endpoint's backlog is limited and overflows by the configured policy.
  */
 final class MessageDistributor extends Thread {
     private final EndpointManager endpointManager;
-    private final ConcurrentLinkedQueue<Message> messages = new ConcurrentLinkedQueue<>();
+    private final MessageQueue<Message> messages;
+    private final MessageQueue.Factory queues;
+    private final Map<Endpoint, DeliveryLane> lanes = new ConcurrentHashMap<>();
+    private final ExecutorService workers;
+    private final int laneCapacity;
+    private final int batchSize;
 
-    MessageDistributor(@Nonnull EndpointManager manager, @Nonnull CraftIRC plugin) {
+    MessageDistributor(@Nonnull EndpointManager manager, @Nonnull CraftIRC plugin, @Nonnull MessageQueue.Factory queues, int capacity, int laneCapacity, int threads, int batchSize) {
+        super("CraftIRC Message Distributor");
         this.endpointManager = manager;
+        this.messages = queues.create("Dispatch queue", capacity, Message::getCategory);
+        this.queues = queues;
+        this.laneCapacity = laneCapacity;
+        this.batchSize = batchSize;
+        AtomicInteger workerCount = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "CraftIRC Delivery #" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
         plugin.trackShutdownable(new WackyWavingInterruptableArmFlailingThreadMan(this));
+        plugin.trackShutdownable(this.workers::shutdownNow);
         this.start();
     }
 
     void addMessage(@Nonnull Message message) {
         this.messages.add(message);
-        synchronized (this.messages) {
-            this.messages.notify();
+    }
+
+    long getDroppedCount() {
+        long dropped = this.messages.getDroppedCount();
+        for (DeliveryLane lane : this.lanes.values()) {
+            dropped += lane.getDroppedCount();
         }
+        return dropped;
+    }
+
+    int getQueueSize() {
+        int size = this.messages.size();
+        for (DeliveryLane lane : this.lanes.values()) {
+            size += lane.getBacklog();
+        }
+        return size;
+    }
+
+    @Nonnull
+    private DeliveryLane getLane(@Nonnull Endpoint endpoint) {
+        DeliveryLane lane = this.lanes.get(endpoint);
+        if (lane == null) {
+            lane = this.lanes.computeIfAbsent(endpoint, e -> new DeliveryLane(e, this.workers, this.queues, this.laneCapacity, this.batchSize));
+        }
+        return lane;
     }
 
     @Override
     public void run() {
-        long timeTrack;
+        List<Message> batch = new ArrayList<>(this.batchSize);
+        List<DeliveryLane> stagedLanes = new ArrayList<>();
         while (!this.isInterrupted()) {
-            timeTrack = System.currentTimeMillis();
-            Message message = this.messages.poll();
-            if (message != null) {
-                for (Pair<Link, Endpoint> pair : this.endpointManager.getDestinations(message.getSource().getName())) {
-                    pair.getRight().receiveMessage(message, pair.getLeft());
-                }
+            try {
+                this.messages.drainTo(batch, this.batchSize);
+            } catch (InterruptedException e) {
+                break;
             }
-            if (this.messages.isEmpty()) {
-                synchronized (this.messages) {
-                    try {
-                        this.messages.wait();
-                    } catch (InterruptedException e) {
-                        break;
+            for (Message message : batch) {
+                for (EndpointManager.Route route : this.endpointManager.getDestinations(message.getSource().getName())) {
+                    DeliveryLane lane = this.getLane(route.getEndpoint());
+                    if (lane.stage(message, route.getLink())) {
+                        stagedLanes.add(lane);
                     }
                 }
             }
-            timeTrack = System.currentTimeMillis() - timeTrack;
-            if (timeTrack < 50 && timeTrack > 0) {
-                try {
-                    Thread.sleep(50 - timeTrack);
-                } catch (InterruptedException e) {
-                    break;
-                }
+            for (DeliveryLane lane : stagedLanes) {
+                lane.flush();
             }
+            batch.clear();
+            stagedLanes.clear();
         }
     }
 }
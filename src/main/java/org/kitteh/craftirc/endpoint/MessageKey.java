@@ -0,0 +1,142 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.endpoint;
+
+import org.kitteh.irc.client.library.util.Sanity;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A typed key for {@link MessageData}.
+ * <p/>
+ * Every key is registered by name and assigned a fixed slot, so message
+ * data can be stored in an array indexed by slot. Names are what
+ * configuration refers to, such as in a datamapper's %SENDER_NAME%.
+ *
+ * @param <Type> type of value stored under this key
+ */
+public final class MessageKey<Type> {
+    private static final Map<String, MessageKey<?>> keys = new ConcurrentHashMap<>();
+    private static volatile MessageKey<?>[] slots = new MessageKey<?>[0];
+
+    /**
+     * Gets the key registered with the given name, registering it if not
+     * yet registered.
+     *
+     * @param name key name
+     * @param type type of value stored under the key
+     * @param <Type> type of value stored under the key
+     * @return the key
+     * @throws IllegalArgumentException if a key is already registered with
+     * this name but a different type
+     */
+    @Nonnull
+    public static synchronized <Type> MessageKey<Type> of(@Nonnull String name, @Nonnull Class<? super Type> type) {
+        Sanity.nullCheck(name, "Name cannot be null");
+        Sanity.nullCheck(type, "Type cannot be null");
+        MessageKey<?> existing = MessageKey.keys.get(name);
+        if (existing != null) {
+            if (existing.type != type) {
+                throw new IllegalArgumentException("Message key '" + name + "' is already registered with type " + existing.type.getSimpleName());
+            }
+            @SuppressWarnings("unchecked")
+            MessageKey<Type> key = (MessageKey<Type>) existing;
+            return key;
+        }
+        MessageKey<?>[] slots = Arrays.copyOf(MessageKey.slots, MessageKey.slots.length + 1);
+        MessageKey<Type> key = new MessageKey<>(name, type, MessageKey.slots.length);
+        slots[key.slot] = key;
+        MessageKey.slots = slots;
+        MessageKey.keys.put(name, key);
+        return key;
+    }
+
+    /**
+     * Gets the key registered with the given name.
+     *
+     * @param name key name
+     * @return the key, or null if no key has this name
+     */
+    @Nullable
+    public static MessageKey<?> get(@Nonnull String name) {
+        return MessageKey.keys.get(name);
+    }
+
+    /**
+     * Gets the number of slots assigned so far.
+     *
+     * @return slot count
+     */
+    static int getSlotCount() {
+        return MessageKey.slots.length;
+    }
+
+    @Nonnull
+    static MessageKey<?> getBySlot(int slot) {
+        return MessageKey.slots[slot];
+    }
+
+    private final String name;
+    private final Class<? super Type> type;
+    private final int slot;
+
+    private MessageKey(@Nonnull String name, @Nonnull Class<? super Type> type, int slot) {
+        this.name = name;
+        this.type = type;
+        this.slot = slot;
+    }
+
+    /**
+     * Gets the name of this key.
+     *
+     * @return key name
+     */
+    @Nonnull
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Gets the type of value stored under this key.
+     *
+     * @return value type
+     */
+    @Nonnull
+    public Class<? super Type> getType() {
+        return this.type;
+    }
+
+    int getSlot() {
+        return this.slot;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
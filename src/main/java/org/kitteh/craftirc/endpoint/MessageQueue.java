@@ -0,0 +1,213 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.endpoint;
+
+import org.kitteh.craftirc.CraftIRC;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A bounded queue of messages awaiting distribution or delivery.
+ * <p/>
+ * When full, the configured {@link OverflowPolicy} decides which message
+ * is dropped. Dropped messages are counted.
+ *
+ * @param <E> type of queued element, a message or a message bound for
+ * delivery
+ */
+abstract class MessageQueue<E> {
+    /**
+     * What to do when a message arrives at a full queue.
+     */
+    enum OverflowPolicy {
+        /**
+         * Drop the oldest queued message to make room.
+         */
+        DROP_OLDEST,
+        /**
+         * Drop the arriving message.
+         */
+        DROP_NEWEST,
+        /**
+         * Drop the oldest message of the least important
+         * {@link Message.Category} queued, as long as it is no more
+         * important than the arriving message. Otherwise, drop the arriving
+         * message.
+         */
+        DROP_CATEGORY,
+        /**
+         * Block the producer for a short time waiting for room, then drop
+         * the arriving message.
+         */
+        BLOCK;
+
+        private static final Map<String, OverflowPolicy> nameMap = new HashMap<>();
+        private static final String names;
+
+        static {
+            StringBuilder builder = new StringBuilder();
+            for (OverflowPolicy policy : OverflowPolicy.values()) {
+                String name = policy.name().toLowerCase().replace('_', '-');
+                nameMap.put(name, policy);
+                builder.append(name).append(", ");
+            }
+            builder.setLength(builder.length() - ", ".length());
+            names = builder.toString();
+        }
+
+        @Nullable
+        static OverflowPolicy getByName(@Nullable String name) {
+            if (name == null) {
+                return null;
+            }
+            return OverflowPolicy.nameMap.get(name.toLowerCase().replace('_', '-'));
+        }
+
+        @Nonnull
+        static String getNames() {
+            return OverflowPolicy.names;
+        }
+    }
+
+    /**
+     * Creates queues of the configured engine, overflow policy and class
+     * weights.
+     */
+    static final class Factory {
+        private final OverflowPolicy policy;
+        private final long blockMillis;
+        private final int[] weights;
+
+        /**
+         * Creates a factory.
+         *
+         * @param policy overflow policy
+         * @param blockMillis longest a producer waits under the block
+         * policy
+         * @param weights class weights for {@link BoundedMessageQueue}, or
+         * null for {@link RingMessageQueue}
+         */
+        Factory(@Nonnull OverflowPolicy policy, long blockMillis, @Nullable int[] weights) {
+            this.policy = policy;
+            this.blockMillis = blockMillis;
+            this.weights = weights;
+        }
+
+        /**
+         * Creates a queue.
+         *
+         * @param description what the queue holds, for warnings
+         * @param capacity most elements held
+         * @param categories gets the class of an element
+         * @param <E> type of queued element
+         * @return new queue
+         */
+        @Nonnull
+        <E> MessageQueue<E> create(@Nonnull String description, int capacity, @Nonnull Function<? super E, Message.Category> categories) {
+            if (this.weights == null) {
+                return new RingMessageQueue<>(description, capacity, this.policy, this.blockMillis);
+            }
+            return new BoundedMessageQueue<>(description, capacity, this.policy, this.blockMillis, this.weights, categories);
+        }
+    }
+
+    private static final int DROP_WARNING_INTERVAL = 1000;
+
+    private final String description;
+    private final int capacity;
+    private final AtomicLong dropped = new AtomicLong();
+
+    MessageQueue(@Nonnull String description, int capacity) {
+        this.description = description;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Queues an element, applying the overflow policy if full.
+     *
+     * @param element element to queue
+     */
+    abstract void add(@Nonnull E element);
+
+    /**
+     * Waits for at least one element, then removes up to the specified
+     * number of elements into the given list. Only one thread may drain
+     * at a time.
+     *
+     * @param batch list to fill
+     * @param max maximum number of elements to remove
+     * @throws InterruptedException if interrupted while waiting
+     */
+    abstract void drainTo(@Nonnull List<E> batch, int max) throws InterruptedException;
+
+    /**
+     * Removes up to the specified number of elements into the given list
+     * without waiting. Only one thread may drain at a time.
+     *
+     * @param batch list to fill
+     * @param max maximum number of elements to remove
+     */
+    abstract void poll(@Nonnull List<E> batch, int max);
+
+    /**
+     * Gets the number of elements currently queued.
+     *
+     * @return queued element count
+     */
+    abstract int size();
+
+    /**
+     * Gets the most messages this queue holds.
+     *
+     * @return queue capacity
+     */
+    int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Gets the number of messages dropped due to overflow.
+     *
+     * @return dropped message count
+     */
+    long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Records a dropped message.
+     */
+    void drop() {
+        long count = this.dropped.incrementAndGet();
+        if (count == 1 || count % DROP_WARNING_INTERVAL == 0) {
+            CraftIRC.log().warn(this.description + " is full (capacity " + this.capacity + "), " + count + " messages dropped so far");
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.endpoint;
+
+import javax.annotation.Nonnull;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A preallocated ring buffer of messages awaiting distribution or
+ * delivery.
+ * <p/>
+ * Producers claim a sequence number, write the message into its slot and
+ * publish the slot by recording the sequence alongside it. The single
+ * consumer reads slots in sequence order for as long as they are
+ * published. Publishing allocates nothing. The consumer spins briefly
+ * before parking when the ring is empty.
+ * <p/>
+ * Only {@link OverflowPolicy#DROP_NEWEST} and {@link OverflowPolicy#BLOCK}
+ * can be honored, as producers cannot safely evict published messages.
+ * Messages are dispatched strictly in arrival order regardless of their
+ * {@link Message.Category}. The ring's slots are rounded up to a power of
+ * two, but no more than the configured capacity are ever held.
+ *
+ * @param <E> type of queued element
+ */
+final class RingMessageQueue<E> extends MessageQueue<E> {
+    private static final int SPINS_BEFORE_PARK = 100;
+    private static final int MAX_SIZE = 1 << 30;
+
+    private final AtomicReferenceArray<E> entries;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final boolean block;
+    private final long blockNanos;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed = 0;
+    private volatile boolean consumerParked = false;
+    private volatile Thread consumer;
+
+    RingMessageQueue(@Nonnull String description, int capacity, @Nonnull OverflowPolicy policy, long blockMillis) {
+        super(description, Math.min(capacity, MAX_SIZE));
+        // The ring is sized up to a power of two for cheap indexing, but
+        // holds no more than the configured capacity
+        int size = RingMessageQueue.powerOfTwo(this.getCapacity());
+        this.entries = new AtomicReferenceArray<>(size);
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.published.set(i, -1);
+        }
+        this.mask = size - 1;
+        this.block = policy == OverflowPolicy.BLOCK;
+        this.blockNanos = TimeUnit.MILLISECONDS.toNanos(blockMillis);
+    }
+
+    @Override
+    void add(@Nonnull E element) {
+        long deadline = 0;
+        long sequence;
+        while (true) {
+            sequence = this.claimed.get();
+            if (sequence - this.consumed >= this.getCapacity()) {
+                if (!this.block) {
+                    this.drop();
+                    return;
+                }
+                long now = System.nanoTime();
+                if (deadline == 0) {
+                    deadline = now + this.blockNanos;
+                } else if (now - deadline >= 0) {
+                    this.drop();
+                    return;
+                }
+                LockSupport.parkNanos(this, TimeUnit.MICROSECONDS.toNanos(50));
+                continue;
+            }
+            if (this.claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+        int index = (int) (sequence & this.mask);
+        this.entries.set(index, element);
+        this.published.set(index, sequence);
+        if (this.consumerParked) {
+            Thread consumer = this.consumer;
+            if (consumer != null) {
+                LockSupport.unpark(consumer);
+            }
+        }
+    }
+
+    @Override
+    void drainTo(@Nonnull List<E> batch, int max) throws InterruptedException {
+        this.consumer = Thread.currentThread();
+        long next = this.consumed;
+        int spins = 0;
+        while (!this.isPublished(next)) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (spins++ < SPINS_BEFORE_PARK) {
+                Thread.yield();
+                continue;
+            }
+            this.consumerParked = true;
+            if (!this.isPublished(next)) {
+                LockSupport.park(this);
+            }
+            this.consumerParked = false;
+        }
+        this.poll(batch, max);
+    }
+
+    @Override
+    void poll(@Nonnull List<E> batch, int max) {
+        long next = this.consumed;
+        int taken = 0;
+        while (taken < max && this.isPublished(next)) {
+            int index = (int) (next & this.mask);
+            batch.add(this.entries.get(index));
+            this.entries.lazySet(index, null);
+            next++;
+            taken++;
+        }
+        this.consumed = next;
+    }
+
+    @Override
+    int size() {
+        return (int) Math.max(0, this.claimed.get() - this.consumed);
+    }
+
+    private boolean isPublished(long sequence) {
+        return this.published.get((int) (sequence & this.mask)) == sequence;
+    }
+
+    private static int powerOfTwo(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity));
+        return size < capacity ? size << 1 : size;
+    }
+}
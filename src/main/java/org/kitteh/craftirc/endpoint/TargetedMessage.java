@@ -23,9 +23,9 @@
  */
 package org.kitteh.craftirc.endpoint;
 
-import org.kitteh.craftirc.util.WrappedMap;
-
 import javax.annotation.Nonnull;
+import java.util.ArrayDeque;
+import java.util.function.UnaryOperator;
 
 /**
  * Wraps a message as received by a particular {@link Endpoint}.
@@ -34,7 +34,9 @@ public final class TargetedMessage {
     private final Message originatingMessage;
     private final Endpoint target;
     private String customMessage;
-    private final WrappedMap<String, Object> customData;
+    private String partialMessage;
+    private ArrayDeque<UnaryOperator<String>> customMessageTransforms;
+    private final MessageData customData;
     private boolean rejected = false;
 
     /**
@@ -46,8 +48,7 @@ public final class TargetedMessage {
     public TargetedMessage(@Nonnull Endpoint target, @Nonnull Message originatingMessage) {
         this.target = target;
         this.originatingMessage = originatingMessage;
-        this.customData = new WrappedMap<>(originatingMessage.getData());
-        this.customMessage = originatingMessage.getDefaultMessage();
+        this.customData = originatingMessage.getData().copy();
     }
 
     /**
@@ -57,7 +58,7 @@ public final class TargetedMessage {
      * @return the custom data associated with the message
      */
     @Nonnull
-    public WrappedMap<String, Object> getCustomData() {
+    public MessageData getCustomData() {
         return this.customData;
     }
 
@@ -69,22 +70,89 @@ public final class TargetedMessage {
      */
     @Nonnull
     public String getCustomMessage() {
+        if (this.customMessage == null) {
+            while (this.getDeferredTransformCount() > 0) {
+                this.applyDeferredTransform();
+            }
+            this.customMessage = (this.partialMessage == null) ? this.originatingMessage.getDefaultMessage() : this.partialMessage;
+            this.partialMessage = null;
+            this.customMessageTransforms = null;
+        }
         return this.customMessage;
     }
 
     /**
      * Sets the message to be output to the target Endpoint.
+     * <p/>
+     * Returning the previous message renders the default message if not
+     * yet rendered. Prefer {@link #replaceCustomMessage(String)} when the
+     * previous message isn't needed.
      *
      * @param message the new message
      * @return the previously set message
      */
     @Nonnull
     public String setCustomMessage(@Nonnull String message) {
-        String oldMessage = this.customMessage;
-        this.customMessage = message;
+        String oldMessage = this.getCustomMessage();
+        this.replaceCustomMessage(message);
         return oldMessage;
     }
 
+    /**
+     * Sets the message to be output to the target Endpoint, without
+     * rendering the message it replaces.
+     *
+     * @param message the new message
+     */
+    public void replaceCustomMessage(@Nonnull String message) {
+        this.customMessage = message;
+        this.partialMessage = null;
+        this.customMessageTransforms = null;
+    }
+
+    /**
+     * Transforms the message to be output to the target Endpoint. If the
+     * default message has not yet been rendered, the transformation is
+     * deferred until the message is read or the link's filters are done,
+     * and skipped entirely if the message is replaced first by
+     * {@link #replaceCustomMessage(String)}.
+     *
+     * @param transform transformation to apply
+     */
+    public void transformCustomMessage(@Nonnull UnaryOperator<String> transform) {
+        if (this.customMessage != null) {
+            this.customMessage = transform.apply(this.customMessage);
+        } else {
+            if (this.customMessageTransforms == null) {
+                this.customMessageTransforms = new ArrayDeque<>(2);
+            }
+            this.customMessageTransforms.add(transform);
+        }
+    }
+
+    /**
+     * Gets the number of deferred transformations not yet applied. Until
+     * they are applied, the count only grows, or drops to zero when the
+     * message is rendered or replaced.
+     *
+     * @return deferred transformation count
+     */
+    public int getDeferredTransformCount() {
+        return (this.customMessageTransforms == null) ? 0 : this.customMessageTransforms.size();
+    }
+
+    /**
+     * Applies the oldest deferred transformation now, rendering the
+     * default message first if needed. The transformation is discarded
+     * even if it throws, leaving the message as it was.
+     */
+    public void applyDeferredTransform() {
+        UnaryOperator<String> transform = (this.customMessageTransforms == null) ? null : this.customMessageTransforms.poll();
+        if (transform != null) {
+            this.partialMessage = transform.apply((this.partialMessage == null) ? this.originatingMessage.getDefaultMessage() : this.partialMessage);
+        }
+    }
+
     /**
      * Gets the target of this message.
      *
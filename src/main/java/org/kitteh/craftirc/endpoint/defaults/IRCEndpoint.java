@@ -26,6 +26,8 @@ package org.kitteh.craftirc.endpoint.defaults;
 import ninja.leaping.configurate.ConfigurationNode;
 import org.kitteh.craftirc.CraftIRC;
 import org.kitteh.craftirc.endpoint.Endpoint;
+import org.kitteh.craftirc.endpoint.Message;
+import org.kitteh.craftirc.endpoint.MessageKey;
 import org.kitteh.craftirc.endpoint.TargetedMessage;
 import org.kitteh.craftirc.exceptions.CraftIRCInvalidConfigException;
 import org.kitteh.craftirc.irc.IRCBot;
@@ -39,27 +41,34 @@ import javax.annotation.Nonnull;
 @Loadable.Type(name = "irc")
 public class IRCEndpoint extends Endpoint {
     public enum MessageType {
-        ME("* %s %s"),
-        MESSAGE("<%s> %s");
+        ME("* %s %s", Message.Category.ACTION),
+        MESSAGE("<%s> %s", Message.Category.CHAT);
 
         private final String format;
+        private final Message.Category category;
 
-        MessageType(String format) {
+        MessageType(String format, Message.Category category) {
             this.format = format;
+            this.category = category;
         }
 
         @Nonnull
         public String getFormat() {
             return this.format;
         }
+
+        @Nonnull
+        public Message.Category getCategory() {
+            return this.category;
+        }
     }
 
-    public static final String IRC_CHANNEL = "IRC_CHANNEL";
-    public static final String IRC_MASK = "IRC_MASK";
-    public static final String IRC_PREFIX = "IRC_PREFIX";
-    public static final String IRC_PREFIXES = "IRC_PREFIXES";
-    public static final String IRC_NICK = "IRC_NICK";
-    public static final String IRC_MESSAGE_TYPE = "IRC_MESSAGE_TYPE";
+    public static final MessageKey<String> IRC_CHANNEL = MessageKey.of("IRC_CHANNEL", String.class);
+    public static final MessageKey<String> IRC_MASK = MessageKey.of("IRC_MASK", String.class);
+    public static final MessageKey<String> IRC_PREFIX = MessageKey.of("IRC_PREFIX", String.class);
+    public static final MessageKey<String> IRC_PREFIXES = MessageKey.of("IRC_PREFIXES", String.class);
+    public static final MessageKey<String> IRC_NICK = MessageKey.of("IRC_NICK", String.class);
+    public static final MessageKey<MessageType> IRC_MESSAGE_TYPE = MessageKey.of("IRC_MESSAGE_TYPE", MessageType.class);
 
     private IRCBot bot;
     private String channel;
@@ -69,9 +78,30 @@ public class IRCEndpoint extends Endpoint {
         this.plugin = plugin;
     }
 
+    /**
+     * Gets the bot this endpoint sends through.
+     *
+     * @return the bot
+     */
+    @Nonnull
+    public IRCBot getBot() {
+        return this.bot;
+    }
+
+    /**
+     * Gets the channel this endpoint sends to.
+     *
+     * @return channel name
+     */
+    @Nonnull
+    public String getChannel() {
+        return this.channel;
+    }
+
     @Override
     protected void receiveMessage(@Nonnull TargetedMessage message) {
-        this.bot.sendMessage(this.channel, message.getCustomMessage());
+        Message originating = message.getOriginatingMessage();
+        this.bot.sendMessage(this.channel, message.getCustomMessage(), originating.getCategory(), originating.getData().get(Endpoint.SENDER_NAME));
     }
 
     @Override
@@ -32,11 +32,18 @@ import org.kitteh.craftirc.util.loadable.Loadable;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Set;
 
 /**
  * This is a filter.
  */
 public abstract class Filter extends Loadable {
+    /**
+     * Name standing for the custom message in {@link #getReadKeys()} and
+     * {@link #getWrittenKeys()}.
+     */
+    public static final String CUSTOM_MESSAGE = "CUSTOM_MESSAGE";
+
     private Link link;
     private Link.LinkFilterLoader loader;
 
@@ -63,6 +70,39 @@ public abstract class Filter extends Loadable {
      */
     public abstract void processMessage(@Nonnull TargetedMessage message);
 
+    /**
+     * Gets if this filter exists to reject messages. A link may move such
+     * a filter ahead of others when the data each reads and writes shows
+     * the order does not matter.
+     *
+     * @return true if this filter is a predicate
+     */
+    public boolean isPredicate() {
+        return false;
+    }
+
+    /**
+     * Gets the names of the data this filter reads, including
+     * {@link #CUSTOM_MESSAGE}.
+     *
+     * @return names read, or null if unknown
+     */
+    @Nullable
+    public Set<String> getReadKeys() {
+        return null;
+    }
+
+    /**
+     * Gets the names of the data this filter may write, including
+     * {@link #CUSTOM_MESSAGE}.
+     *
+     * @return names written, or null if unknown
+     */
+    @Nullable
+    public Set<String> getWrittenKeys() {
+        return null;
+    }
+
     @Override
     protected final void load(@Nonnull CraftIRC plugin, @Nonnull ConfigurationNode data) throws CraftIRCInvalidConfigException {
         if (!data.getNode(FilterManager.Target.EndpointLoader).isVirtual()) {
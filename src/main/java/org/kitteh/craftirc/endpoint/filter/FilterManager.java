@@ -29,6 +29,7 @@ import org.kitteh.craftirc.endpoint.filter.defaults.AntiHighlight;
 import org.kitteh.craftirc.endpoint.filter.defaults.Colors;
 import org.kitteh.craftirc.endpoint.filter.defaults.DataMapper;
 import org.kitteh.craftirc.endpoint.filter.defaults.RegexFilter;
+import org.kitteh.craftirc.endpoint.filter.defaults.RegexSetFilter;
 import org.kitteh.craftirc.endpoint.link.Link;
 import org.kitteh.craftirc.util.loadable.LoadableTypeManager;
 
@@ -55,6 +56,7 @@ public final class FilterManager extends LoadableTypeManager<Filter> {
         this.registerType(Colors.class);
         this.registerType(DataMapper.class);
         this.registerType(RegexFilter.class);
+        this.registerType(RegexSetFilter.class);
         if (!repeatables.isVirtual() && repeatables.hasMapChildren()) {
             this.loadRepeatables(repeatables);
         }
@@ -23,25 +23,85 @@
  */
 package org.kitteh.craftirc.endpoint.filter.defaults;
 
+import ninja.leaping.configurate.ConfigurationNode;
+import org.kitteh.craftirc.endpoint.Endpoint;
 import org.kitteh.craftirc.endpoint.TargetedMessage;
+import org.kitteh.craftirc.endpoint.defaults.IRCEndpoint;
 import org.kitteh.craftirc.endpoint.filter.Filter;
+import org.kitteh.craftirc.exceptions.CraftIRCInvalidConfigException;
 import org.kitteh.craftirc.util.loadable.Load;
 import org.kitteh.craftirc.util.loadable.Loadable;
+import org.kitteh.irc.client.library.util.Format;
 
 import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Anti highlight aww yes.
+ * <p/>
+ * In variable mode, splits up the value of one variable wherever it
+ * appears. In nicks mode, splits up any word of the message that is the
+ * nickname of someone in the target IRC channel.
  */
 @Loadable.Type(name = "antihighlight")
 public class AntiHighlight extends Filter {
+    public enum Mode {
+        VARIABLE,
+        NICKS;
+
+        private static final Map<String, Mode> nameMap = new HashMap<>();
+
+        static {
+            for (Mode mode : Mode.values()) {
+                nameMap.put(mode.name(), mode);
+            }
+        }
+
+        private static Mode getByName(String name) {
+            if (name == null) {
+                return null;
+            }
+            return Mode.nameMap.get(name.toUpperCase());
+        }
+    }
+
+    private static final String NICK_SPECIAL_CHARS = "-[]\\`^_{|}";
+
     @Load
     private String splitter;
-    @Load
+    @Load(required = false)
     private String variable;
+    private Mode mode;
+
+    @Override
+    protected void load(@Nonnull ConfigurationNode data) throws CraftIRCInvalidConfigException {
+        String mode = data.getNode("mode").getString("variable");
+        if ((this.mode = Mode.getByName(mode)) == null) {
+            throw new CraftIRCInvalidConfigException("Invalid antihighlight mode '" + mode + "'. Valid modes: variable, nicks");
+        }
+        if ((this.mode == Mode.VARIABLE) && (this.variable == null)) {
+            throw new CraftIRCInvalidConfigException("Antihighlight variable mode requires 'variable' to be set");
+        }
+    }
 
     @Override
     public void processMessage(@Nonnull TargetedMessage message) {
+        if (this.mode == Mode.NICKS) {
+            Endpoint target = message.getTarget();
+            if (target instanceof IRCEndpoint) {
+                IRCEndpoint irc = (IRCEndpoint) target;
+                Set<String> nicks = irc.getBot().getNicks(irc.getChannel());
+                if (!nicks.isEmpty()) {
+                    message.transformCustomMessage(custom -> this.splitNicks(custom, nicks));
+                }
+            }
+            return;
+        }
         if (message.getCustomData().containsKey(this.variable)) {
             String oldValue = message.getCustomData().get(this.variable).toString();
             if (oldValue.length() > 1) {
@@ -52,8 +112,70 @@ public class AntiHighlight extends Filter {
                 builder.setLength(builder.length() - this.splitter.length());
                 String newValue = builder.toString();
                 message.getCustomData().put(this.variable, newValue);
-                message.setCustomMessage(message.getCustomMessage().replace(oldValue, newValue));
+                message.transformCustomMessage(custom -> custom.replace(oldValue, newValue));
             }
         }
     }
+
+    @Nonnull
+    private String splitNicks(@Nonnull String input, @Nonnull Set<String> nicks) {
+        int length = input.length();
+        StringBuilder builder = null;
+        int copied = 0;
+        int i = 0;
+        while (i < length) {
+            char c = input.charAt(i);
+            if (c == Format.COLOR_CHAR) {
+                i = skipColor(input, i + 1);
+                continue;
+            }
+            if (!isNickChar(c)) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while ((i < length) && isNickChar(input.charAt(i))) {
+                i++;
+            }
+            if (((i - start) > 1) && nicks.contains(input.substring(start, i))) {
+                if (builder == null) {
+                    builder = new StringBuilder(length + 16);
+                }
+                builder.append(input, copied, start + 1).append(this.splitter);
+                copied = start + 1;
+            }
+        }
+        return (builder == null) ? input : builder.append(input, copied, length).toString();
+    }
+
+    private static int skipColor(@Nonnull String input, int index) {
+        index = skipDigits(input, index);
+        if ((index + 1 < input.length()) && (input.charAt(index) == ',') && Character.isDigit(input.charAt(index + 1))) {
+            index = skipDigits(input, index + 1);
+        }
+        return index;
+    }
+
+    private static int skipDigits(@Nonnull String input, int index) {
+        for (int count = 0; (count < 2) && (index < input.length()) && Character.isDigit(input.charAt(index)); count++) {
+            index++;
+        }
+        return index;
+    }
+
+    private static boolean isNickChar(char c) {
+        return Character.isLetterOrDigit(c) || (NICK_SPECIAL_CHARS.indexOf(c) >= 0);
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getReadKeys() {
+        return this.getWrittenKeys();
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getWrittenKeys() {
+        return (this.mode == Mode.NICKS) ? Collections.singleton(CUSTOM_MESSAGE) : new HashSet<>(Arrays.asList(this.variable, CUSTOM_MESSAGE));
+    }
 }
@@ -24,21 +24,26 @@
 package org.kitteh.craftirc.endpoint.filter.defaults;
 
 import org.kitteh.craftirc.endpoint.Endpoint;
+import org.kitteh.craftirc.endpoint.MessageData;
+import org.kitteh.craftirc.endpoint.MessageKey;
 import org.kitteh.craftirc.endpoint.TargetedMessage;
 import org.kitteh.craftirc.endpoint.defaults.IRCEndpoint;
 import org.kitteh.craftirc.endpoint.filter.Filter;
-import org.kitteh.craftirc.util.WrappedMap;
 import org.kitteh.craftirc.util.loadable.Loadable;
 import org.kitteh.irc.client.library.util.Format;
 
 import javax.annotation.Nonnull;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Color conversion.
+ * <p/>
+ * Translates in a single pass using lookup tables. Bold, italic and
+ * underline are carried across along with colors, and codes with no
+ * equivalent on the other side are dropped.
  */
 @Loadable.Type(name = "color")
 public class Colors extends Filter {
@@ -68,44 +73,50 @@ public class Colors extends Filter {
             this.mc = mc;
         }
 
-        private static final Map<Integer, String> IRC_MAP;
-        private static final Pattern IRC_PATTERN;
-        private static final Map<Character, String> MC_MAP;
-        private static final Pattern MC_PATTERN;
+        /**
+         * Minecraft color code by IRC color number, or 0 for none.
+         */
+        private static final char[] IRC_TO_MC = new char[100];
+        /**
+         * IRC color code by lowercase Minecraft code character, or null for
+         * none.
+         */
+        private static final String[] MC_TO_IRC = new String[128];
 
         static {
-            IRC_MAP = new HashMap<>();
-            MC_MAP = new HashMap<>();
             for (Matches matches : values()) {
-                IRC_MAP.put(matches.irc.getColorChar(), "\u00A7" + matches.mc);
-                MC_MAP.put(matches.mc, matches.irc.toString());
+                char mc = Character.toLowerCase(matches.mc);
+                int irc = matches.irc.getColorChar();
+                IRC_TO_MC[irc] = mc;
+                MC_TO_IRC[mc] = new String(new char[]{Format.COLOR_CHAR, (char) ('0' + (irc / 10)), (char) ('0' + (irc % 10))});
             }
-            IRC_PATTERN = Pattern.compile(Format.COLOR_CHAR + "([0-9]{1,2})(?:,[0-9]{1,2})?");
-            MC_PATTERN = Pattern.compile("\u00A7([a-z0-9])", Pattern.CASE_INSENSITIVE);
-        }
-
-        static String getIRCByMC(char mc) {
-            return MC_MAP.get(mc);
-        }
-
-        static String getMCByIRC(int irc) {
-            return IRC_MAP.get(irc);
         }
     }
 
+    private static final char SECTION = '\u00A7';
+    private static final char IRC_BOLD = '\u0002';
+    private static final char IRC_ITALIC = '\u001D';
+    private static final char IRC_UNDERLINE = '\u001F';
+    private static final char IRC_REVERSE = '\u0016';
+    private static final char IRC_RESET = '\u000F';
+    private static final int IRC_DEFAULT_COLOR = 99;
+    private static final char[] IRC_STYLES = {IRC_BOLD, IRC_ITALIC, IRC_UNDERLINE};
+    private static final char[] MC_STYLES = {'l', 'o', 'n'};
+    private static final Set<String> KEYS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(Endpoint.SENDER_NAME.getName(), Endpoint.MESSAGE_TEXT.getName(), CUSTOM_MESSAGE)));
+
     @Override
     public void processMessage(@Nonnull TargetedMessage message) {
         Endpoint origin = message.getTarget();
-        message.setCustomMessage(this.process(origin, message.getCustomMessage()));
-        WrappedMap<String, Object> map = message.getCustomData();
-        this.process(origin, map, Endpoint.SENDER_NAME);
-        this.process(origin, map, Endpoint.MESSAGE_TEXT);
+        message.transformCustomMessage(custom -> this.process(origin, custom));
+        MessageData data = message.getCustomData();
+        this.process(origin, data, Endpoint.SENDER_NAME);
+        this.process(origin, data, Endpoint.MESSAGE_TEXT);
     }
 
-    private void process(Endpoint origin, WrappedMap<String, Object> map, String key) {
-        Object o = map.get(key);
-        if (o instanceof String) {
-            map.put(key, this.process(origin, (String) map.get(key)));
+    private void process(Endpoint origin, MessageData data, MessageKey<String> key) {
+        String value = data.get(key);
+        if (value != null) {
+            data.put(key, this.process(origin, value));
         }
     }
 
@@ -113,54 +124,135 @@ public class Colors extends Filter {
         return origin instanceof IRCEndpoint ? toIRC(original) : toMC(original);
     }
 
-    private String toIRC(String input) {
-        Matcher matcher = Matches.MC_PATTERN.matcher(input);
-        int currentIndex = 0;
-        StringBuilder builder = new StringBuilder();
-        while (matcher.find()) {
-            int next = matcher.start();
-            if (currentIndex < next) {
-                builder.append(input.substring(currentIndex, next));
+    static String toIRC(String input) {
+        int length = input.length();
+        StringBuilder builder = new StringBuilder(length + 8);
+        int styles = 0;
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            if ((c != SECTION) || ((i + 1) == length)) {
+                builder.append(c);
+                continue;
             }
-            currentIndex = matcher.end();
-            char s = matcher.group(1).toUpperCase().charAt(0);
-            if (s <= 'F') {
-                builder.append(Matches.getIRCByMC(s));
-            } else if (s == 'R') {
-                builder.append(Format.RESET);
+            char code = Character.toLowerCase(input.charAt(i + 1));
+            String color = (code < Matches.MC_TO_IRC.length) ? Matches.MC_TO_IRC[code] : null;
+            if (color != null) {
+                // Minecraft colors clear styles, IRC colors do not
+                if (styles != 0) {
+                    builder.append(IRC_RESET);
+                    styles = 0;
+                }
+                builder.append(color);
+            } else if (code == 'r') {
+                builder.append(IRC_RESET);
+                styles = 0;
+            } else if (Character.isLetterOrDigit(code)) {
+                int style = indexOf(MC_STYLES, code);
+                if ((style >= 0) && ((styles & (1 << style)) == 0)) {
+                    builder.append(IRC_STYLES[style]);
+                    styles |= 1 << style;
+                }
+            } else {
+                builder.append(c);
+                continue;
             }
+            i++;
         }
-        if (currentIndex < input.length()) {
-            builder.append(input.substring(currentIndex));
-        }
-        return builder.append(Format.RESET).toString();
+        return builder.append(IRC_RESET).toString();
     }
 
-    private String toMC(String input) {
-        Matcher matcher = Matches.IRC_PATTERN.matcher(input);
-        input = input.replace(Format.BOLD.toString(), "");
-        input = input.replace(Format.UNDERLINE.toString(), "");
-        input = input.replace(Format.REVERSE.toString(), "");
-        input = input.replace(Format.RESET.toString(), "\u00A7r");
-        int currentIndex = 0;
-        StringBuilder builder = new StringBuilder();
-        while (matcher.find()) {
-            int next = matcher.start();
-            if (currentIndex < next) {
-                builder.append(input.substring(currentIndex, next));
+    static String toMC(String input) {
+        int length = input.length();
+        StringBuilder builder = new StringBuilder(length + 8);
+        char color = 0;
+        int styles = 0;
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            switch (c) {
+                case Format.COLOR_CHAR:
+                    int number = -1;
+                    if (isDigitAt(input, i + 1)) {
+                        number = input.charAt(++i) - '0';
+                        if (isDigitAt(input, i + 1)) {
+                            number = (number * 10) + (input.charAt(++i) - '0');
+                        }
+                        if ((i + 2 < length) && (input.charAt(i + 1) == ',') && isDigitAt(input, i + 2)) {
+                            i += 2;
+                            if (isDigitAt(input, i + 1)) {
+                                i++;
+                            }
+                        }
+                    }
+                    if ((number < 0) || (number == IRC_DEFAULT_COLOR)) {
+                        color = 0;
+                    } else if (Matches.IRC_TO_MC[number] != 0) {
+                        color = Matches.IRC_TO_MC[number];
+                    } else {
+                        break;
+                    }
+                    appendMC(builder, color, styles);
+                    break;
+                case IRC_BOLD:
+                case IRC_ITALIC:
+                case IRC_UNDERLINE:
+                    int style = indexOf(IRC_STYLES, c);
+                    styles ^= 1 << style;
+                    if ((styles & (1 << style)) != 0) {
+                        builder.append(SECTION).append(MC_STYLES[style]);
+                    } else {
+                        // Minecraft has no codes to turn a style off
+                        appendMC(builder, color, styles);
+                    }
+                    break;
+                case IRC_RESET:
+                    color = 0;
+                    styles = 0;
+                    builder.append(SECTION).append('r');
+                    break;
+                case IRC_REVERSE:
+                    break;
+                default:
+                    builder.append(c);
             }
-            currentIndex = matcher.end();
-            int i;
-            try {
-                i = Integer.parseInt(matcher.group(1));
-            } catch (NumberFormatException ignored) {
-                continue;
+        }
+        return builder.append(SECTION).append('r').toString();
+    }
+
+    private static void appendMC(StringBuilder builder, char color, int styles) {
+        builder.append(SECTION).append((color == 0) ? 'r' : color);
+        for (int style = 0; style < MC_STYLES.length; style++) {
+            if ((styles & (1 << style)) != 0) {
+                builder.append(SECTION).append(MC_STYLES[style]);
             }
-            builder.append(Matches.getMCByIRC(i));
         }
-        if (currentIndex < input.length()) {
-            builder.append(input.substring(currentIndex));
+    }
+
+    private static boolean isDigitAt(String input, int index) {
+        if (index >= input.length()) {
+            return false;
+        }
+        char c = input.charAt(index);
+        return (c >= '0') && (c <= '9');
+    }
+
+    private static int indexOf(char[] array, char c) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == c) {
+                return i;
+            }
         }
-        return builder.append("\u00A7r").toString();
+        return -1;
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getReadKeys() {
+        return KEYS;
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getWrittenKeys() {
+        return KEYS;
     }
 }
@@ -24,6 +24,8 @@
 package org.kitteh.craftirc.endpoint.filter.defaults;
 
 import ninja.leaping.configurate.ConfigurationNode;
+import org.kitteh.craftirc.endpoint.MessageData;
+import org.kitteh.craftirc.endpoint.MessageKey;
 import org.kitteh.craftirc.endpoint.TargetedMessage;
 import org.kitteh.craftirc.endpoint.filter.Filter;
 import org.kitteh.craftirc.exceptions.CraftIRCInvalidConfigException;
@@ -31,21 +33,32 @@ import org.kitteh.craftirc.util.loadable.Load;
 import org.kitteh.craftirc.util.loadable.Loadable;
 
 import javax.annotation.Nonnull;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * Maps data to a message.
+ * <p/>
+ * The message is compiled at load into alternating literals and variables,
+ * with variables resolved to their {@link MessageKey} where one is
+ * registered.
  */
 @Loadable.Type(name = "datamapper")
 public class DataMapper extends Filter {
     private static final Pattern PERCENT_VARIABLE = Pattern.compile("%([^ %\\n]+)%");
-    private String format;
+    private static final int ESTIMATED_VARIABLE_LENGTH = 16;
     @Load
     private String message;
-    private List<String> variables;
+    private String[] literals;
+    private String[] names;
+    private MessageKey<?>[] keys;
+    private int estimatedLength;
 
     @Nonnull
     public String getMessageFormat() {
@@ -54,26 +67,49 @@ public class DataMapper extends Filter {
 
     @Override
     public void processMessage(@Nonnull TargetedMessage message) {
-        Object[] vars = new Object[this.variables.size()];
-        for (int i = 0; i < vars.length; i++) {
-            Object data = message.getCustomData().get(this.variables.get(i));
-            vars[i] = data == null ? "" : data.toString();
+        MessageData data = message.getCustomData();
+        StringBuilder builder = new StringBuilder(this.estimatedLength);
+        builder.append(this.literals[0]);
+        for (int i = 0; i < this.names.length; i++) {
+            Object value = (this.keys[i] == null) ? data.get(this.names[i]) : data.get(this.keys[i]);
+            if (value != null) {
+                builder.append(value);
+            }
+            builder.append(this.literals[i + 1]);
         }
-        message.setCustomMessage(String.format(this.format, vars));
+        message.replaceCustomMessage(builder.toString());
     }
 
     @Override
     protected void load(@Nonnull ConfigurationNode data) throws CraftIRCInvalidConfigException {
         Matcher matcher = PERCENT_VARIABLE.matcher(this.message);
-        this.variables = new LinkedList<>();
-        StringBuilder builder = new StringBuilder();
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
         int last = 0;
         while (matcher.find()) {
-            builder.append(this.message.substring(last, matcher.start())).append("%s");
-            this.variables.add(matcher.group(1));
+            literals.add(this.message.substring(last, matcher.start()));
+            names.add(matcher.group(1));
             last = matcher.end();
         }
-        builder.append(message.substring(last, message.length()));
-        this.format = builder.toString();
+        literals.add(this.message.substring(last));
+        this.literals = literals.toArray(new String[literals.size()]);
+        this.names = names.toArray(new String[names.size()]);
+        this.keys = new MessageKey<?>[this.names.length];
+        for (int i = 0; i < this.names.length; i++) {
+            this.keys[i] = MessageKey.get(this.names[i]);
+        }
+        this.estimatedLength = this.message.length() + (this.names.length * ESTIMATED_VARIABLE_LENGTH);
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getReadKeys() {
+        return new HashSet<>(Arrays.asList(this.names));
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getWrittenKeys() {
+        return Collections.singleton(CUSTOM_MESSAGE);
     }
 }
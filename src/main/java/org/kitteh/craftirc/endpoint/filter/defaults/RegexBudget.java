@@ -0,0 +1,135 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.endpoint.filter.defaults;
+
+import ninja.leaping.configurate.ConfigurationNode;
+import org.kitteh.craftirc.CraftIRC;
+import org.kitteh.craftirc.exceptions.CraftIRCInvalidConfigException;
+import org.kitteh.craftirc.util.BudgetedCharSequence;
+import org.kitteh.craftirc.util.MatchCache;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Step budget for a regex filter's matching, from its 'step-budget' and
+ * 'over-budget' settings. Matching is unlimited unless a budget is set.
+ */
+final class RegexBudget {
+    enum Outcome {
+        MATCH,
+        NO_MATCH;
+
+        private static final Map<String, Outcome> nameMap = new HashMap<>();
+
+        static {
+            for (Outcome outcome : Outcome.values()) {
+                nameMap.put(outcome.name().toLowerCase().replace('_', '-'), outcome);
+            }
+        }
+
+        private static Outcome getByName(String name) {
+            if (name == null) {
+                return null;
+            }
+            return Outcome.nameMap.get(name.toLowerCase());
+        }
+    }
+
+    private static final long DEFAULT_STEPS = 0;
+    private static final int WARNING_INTERVAL = 1000;
+
+    private final String description;
+    private final long steps;
+    private final Outcome outcome;
+    private final AtomicLong exceeded = new AtomicLong();
+
+    RegexBudget(@Nonnull ConfigurationNode data, @Nonnull String description) throws CraftIRCInvalidConfigException {
+        this.description = description;
+        this.steps = data.getNode("step-budget").getLong(DEFAULT_STEPS);
+        if (this.steps < 0) {
+            throw new CraftIRCInvalidConfigException("Regex 'step-budget' cannot be negative");
+        }
+        String outcome = data.getNode("over-budget").getString("no-match");
+        if ((this.outcome = Outcome.getByName(outcome)) == null) {
+            throw new CraftIRCInvalidConfigException("Invalid regex 'over-budget' '" + outcome + "'. Valid outcomes: match, no-match");
+        }
+    }
+
+    /**
+     * Gets the steps allowed per match attempt.
+     *
+     * @return step budget, or 0 for no limit
+     */
+    long getSteps() {
+        return this.steps;
+    }
+
+    /**
+     * Wraps input for a match attempt within budget.
+     *
+     * @param input input
+     * @return input to match against
+     */
+    @Nonnull
+    CharSequence wrap(@Nonnull String input) {
+        return (this.steps > 0) ? new BudgetedCharSequence(input, this.steps) : input;
+    }
+
+    /**
+     * Converts a match result to whether it counts as a match, recording
+     * it if over budget.
+     *
+     * @param result result
+     * @return true if counted as a match
+     */
+    boolean isMatch(@Nonnull MatchCache.Result result) {
+        if (result == MatchCache.Result.OVER_BUDGET) {
+            this.recordExceeded();
+            return this.outcome == Outcome.MATCH;
+        }
+        return result == MatchCache.Result.MATCH;
+    }
+
+    /**
+     * Records a match attempt running out of steps.
+     */
+    void recordExceeded() {
+        long count = this.exceeded.incrementAndGet();
+        if (count == 1 || count % WARNING_INTERVAL == 0) {
+            CraftIRC.log().warn("Regex " + this.description + " exceeded its step budget of " + this.steps + ", " + count + " times so far");
+        }
+    }
+
+    /**
+     * Gets the number of match attempts that ran out of steps.
+     *
+     * @return exceeded count
+     */
+    long getExceededCount() {
+        return this.exceeded.get();
+    }
+}
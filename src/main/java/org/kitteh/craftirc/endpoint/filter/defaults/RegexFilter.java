@@ -27,14 +27,19 @@ import ninja.leaping.configurate.ConfigurationNode;
 import org.kitteh.craftirc.endpoint.TargetedMessage;
 import org.kitteh.craftirc.endpoint.filter.Filter;
 import org.kitteh.craftirc.exceptions.CraftIRCInvalidConfigException;
+import org.kitteh.craftirc.util.BudgetedCharSequence;
+import org.kitteh.craftirc.util.MatchCache;
 import org.kitteh.craftirc.util.loadable.Load;
 import org.kitteh.craftirc.util.loadable.Loadable;
 
 import javax.annotation.Nonnull;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -50,7 +55,7 @@ public class RegexFilter extends Filter {
         STORE;
 
         private static final Map<String, Action> nameMap = new HashMap<>();
-        private static final String names;
+        static final String names;
 
         static {
             StringBuilder builder = new StringBuilder();
@@ -64,7 +69,7 @@ public class RegexFilter extends Filter {
             names = builder.toString();
         }
 
-        private static Action getByName(String name) {
+        static Action getByName(String name) {
             if (name == null) {
                 return null;
             }
@@ -84,7 +89,7 @@ public class RegexFilter extends Filter {
             }
         }
 
-        private static Match getByName(String name) {
+        static Match getByName(String name) {
             if (name == null) {
                 return null;
             }
@@ -95,6 +100,7 @@ public class RegexFilter extends Filter {
     private static final Pattern NAMED_GROUP = Pattern.compile("\\(\\?<([a-zA-Z][a-zA-Z0-9]*)>");
 
     private Action action;
+    private RegexBudget budget;
     private Match match;
     private Pattern pattern;
     private String replacement;
@@ -108,7 +114,7 @@ public class RegexFilter extends Filter {
         if ((pattern = data.getNode("pattern").getString()) == null) {
             throw new CraftIRCInvalidConfigException("Regex pattern requires a 'pattern' defined");
         }
-        this.pattern = Pattern.compile(pattern);
+        this.pattern = MatchCache.intern(pattern);
         if ((this.action = Action.getByName(data.getNode("action").getString())) == null) {
             throw new CraftIRCInvalidConfigException("Regex pattern requires an 'action' defined. Valid action types: " + Action.names);
         }
@@ -116,6 +122,7 @@ public class RegexFilter extends Filter {
         if (this.match == null) {
             this.match = Match.PARTIAL;
         }
+        this.budget = new RegexBudget(data, "pattern '" + pattern + "'");
         switch (this.action) {
             case REPLACE:
                 if ((this.replacement = data.getNode("replacement").getString()) == null) {
@@ -130,54 +137,96 @@ public class RegexFilter extends Filter {
                 if (this.namedGroups.isEmpty()) {
                     throw new CraftIRCInvalidConfigException("To use the STORE action, a named matching group must be defined");
                 }
-                // TODO: Provide for defining which, in multiple match cases, found item is stored
                 break;
             default:
                 // Nothing else to do
         }
     }
 
+    /**
+     * Gets the number of times matching ran out of steps.
+     *
+     * @return count of matches over budget
+     */
+    public long getOverBudgetCount() {
+        return this.budget.getExceededCount();
+    }
+
     @Override
     public void processMessage(@Nonnull TargetedMessage message) {
         String val = message.getCustomData().get(this.value).toString();
-        Matcher matcher = this.pattern.matcher(val);
-        boolean matches;
-        switch (this.match) {
-            case FULL:
-                matches = matcher.matches();
-                break;
-            case PARTIAL:
-            default:
-                matches = matcher.find();
-        }
         switch (this.action) {
             case ALLOW:
-                if (!matches) {
-                    message.reject();
-                }
-                break;
             case DROP:
-                if (matches) {
+                MatchCache cache = message.getOriginatingMessage().getMatchCache();
+                long steps = this.budget.getSteps();
+                boolean matches = this.budget.isMatch((this.match == Match.FULL) ? cache.matches(this.pattern, val, steps) : cache.find(this.pattern, val, steps));
+                if (matches != (this.action == Action.ALLOW)) {
                     message.reject();
                 }
                 break;
             case REPLACE:
-                if (matches) {
-                    message.getCustomData().put(this.value, matcher.replaceAll(this.replacement));
-                }
-                break;
             case STORE:
-                do {
-                    for (String name : this.namedGroups) {
-                        String match = matcher.group(name);
-                        if (match != null) {
-                            message.getCustomData().put(name, match);
+                // One matcher, so the whole transform shares a single budget
+                Matcher matcher = this.pattern.matcher(this.budget.wrap(val));
+                try {
+                    if ((this.match == Match.FULL) ? matcher.matches() : matcher.find()) {
+                        if (this.action == Action.REPLACE) {
+                            this.replace(message, matcher);
+                        } else {
+                            this.store(message, matcher);
                         }
                     }
-                } while (this.match == Match.PARTIAL && matcher.find());
+                } catch (BudgetedCharSequence.BudgetExceededException e) {
+                    this.budget.recordExceeded();
+                }
                 break;
             default:
                 // panic
         }
     }
+
+    private void replace(@Nonnull TargetedMessage message, @Nonnull Matcher matcher) {
+        StringBuffer buffer = new StringBuffer();
+        do {
+            matcher.appendReplacement(buffer, this.replacement);
+        } while (this.match == Match.PARTIAL && matcher.find());
+        matcher.appendTail(buffer);
+        message.getCustomData().put(this.value, buffer.toString());
+    }
+
+    private void store(@Nonnull TargetedMessage message, @Nonnull Matcher matcher) {
+        do {
+            for (String name : this.namedGroups) {
+                String match = matcher.group(name);
+                if (match != null) {
+                    message.getCustomData().put(name, match);
+                }
+            }
+        } while (this.match == Match.PARTIAL && matcher.find());
+    }
+
+    @Override
+    public boolean isPredicate() {
+        return (this.action == Action.ALLOW) || (this.action == Action.DROP);
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getReadKeys() {
+        return Collections.singleton(this.value);
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getWrittenKeys() {
+        switch (this.action) {
+            case REPLACE:
+                return Collections.singleton(this.value);
+            case STORE:
+                return new HashSet<>(this.namedGroups);
+            default:
+                return Collections.emptySet();
+        }
+    }
 }
@@ -0,0 +1,267 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.endpoint.filter.defaults;
+
+import ninja.leaping.configurate.ConfigurationNode;
+import org.kitteh.craftirc.endpoint.MessageKey;
+import org.kitteh.craftirc.endpoint.TargetedMessage;
+import org.kitteh.craftirc.endpoint.filter.Filter;
+import org.kitteh.craftirc.exceptions.CraftIRCInvalidConfigException;
+import org.kitteh.craftirc.util.BudgetedCharSequence;
+import org.kitteh.craftirc.util.MatchCache;
+import org.kitteh.craftirc.util.loadable.Load;
+import org.kitteh.craftirc.util.loadable.Loadable;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Filter of information by a set of regular expressions, matched together.
+ * <p/>
+ * Patterns are compiled into one alternation, so the whole set costs a
+ * single scan. Patterns with backreferences, whose group numbers would
+ * shift, are matched individually afterward. The first matching pattern
+ * is stored as {@link #MATCHED_PATTERN} if the message is not rejected.
+ * As group numbers shift when combined, replacements cannot refer to
+ * groups. Like {@link RegexFilter}, matching
+ * is limited by 'step-budget' with 'over-budget' deciding the outcome.
+ */
+@Loadable.Type(name = "regex-set")
+public class RegexSetFilter extends Filter {
+    /**
+     * Constant defining the message data value "MATCHED_PATTERN".
+     */
+    public static final MessageKey<String> MATCHED_PATTERN = MessageKey.of("MATCHED_PATTERN", String.class);
+
+    private static final String OVER_BUDGET = "(over step budget)";
+    private static final Pattern BACKREFERENCE = Pattern.compile("\\\\(?:[1-9]|k<)");
+
+    private RegexFilter.Action action;
+    private RegexBudget budget;
+    private RegexFilter.Match match;
+    private String replacement;
+    @Load
+    private String value;
+    private Pattern combined;
+    private int[] combinedGroups;
+    private String[] combinedSources;
+    private Pattern[] separate;
+
+    @Override
+    protected void load(@Nonnull ConfigurationNode data) throws CraftIRCInvalidConfigException {
+        if ((this.action = RegexFilter.Action.getByName(data.getNode("action").getString())) == null) {
+            throw new CraftIRCInvalidConfigException("Regex set requires an 'action' defined. Valid action types: " + RegexFilter.Action.names);
+        }
+        switch (this.action) {
+            case REPLACE:
+                if ((this.replacement = data.getNode("replacement").getString()) == null) {
+                    throw new CraftIRCInvalidConfigException("Regex set replace action requires 'replacement' to be set");
+                }
+                if (this.replacement.indexOf('$') != -1 || this.replacement.indexOf('\\') != -1) {
+                    throw new CraftIRCInvalidConfigException("Regex set 'replacement' cannot refer to groups, so cannot contain '$' or '\\'");
+                }
+                break;
+            case STORE:
+                throw new CraftIRCInvalidConfigException("Regex set does not support the STORE action");
+            default:
+                // Nothing else to do
+        }
+        this.match = RegexFilter.Match.getByName(data.getNode("match").getString());
+        if (this.match == null) {
+            this.match = RegexFilter.Match.PARTIAL;
+        }
+        this.budget = new RegexBudget(data, "set on value '" + this.value + "'");
+        List<? extends ConfigurationNode> patternNodes = data.getNode("patterns").getChildrenList();
+        if (patternNodes.isEmpty()) {
+            throw new CraftIRCInvalidConfigException("Regex set requires a list of 'patterns' defined");
+        }
+        List<String> combinedSources = new ArrayList<>();
+        List<Integer> combinedGroups = new ArrayList<>();
+        List<Pattern> separate = new ArrayList<>();
+        StringBuilder combined = new StringBuilder();
+        int group = 1;
+        for (ConfigurationNode node : patternNodes) {
+            String source = node.getString();
+            if (source == null) {
+                throw new CraftIRCInvalidConfigException("Regex set patterns must be strings");
+            }
+            Pattern pattern;
+            try {
+                pattern = MatchCache.intern(source);
+            } catch (PatternSyntaxException e) {
+                throw new CraftIRCInvalidConfigException("Invalid regex set pattern '" + source + "': " + e.getDescription());
+            }
+            if (BACKREFERENCE.matcher(source).find()) {
+                separate.add(pattern);
+                continue;
+            }
+            if (combined.length() > 0) {
+                combined.append('|');
+            }
+            combined.append('(').append(source).append(')');
+            combinedSources.add(source);
+            combinedGroups.add(group);
+            group += pattern.matcher("").groupCount() + 1;
+        }
+        if (!combinedSources.isEmpty()) {
+            try {
+                this.combined = MatchCache.intern(combined.toString());
+            } catch (PatternSyntaxException e) {
+                // Something about the patterns does not survive combining, such as duplicate group names
+                for (String source : combinedSources) {
+                    separate.add(MatchCache.intern(source));
+                }
+                combinedSources.clear();
+                combinedGroups.clear();
+            }
+        }
+        this.combinedSources = combinedSources.toArray(new String[combinedSources.size()]);
+        this.combinedGroups = new int[combinedGroups.size()];
+        for (int i = 0; i < this.combinedGroups.length; i++) {
+            this.combinedGroups[i] = combinedGroups.get(i);
+        }
+        this.separate = separate.toArray(new Pattern[separate.size()]);
+    }
+
+    /**
+     * Gets the number of times matching ran out of steps.
+     *
+     * @return count of matches over budget
+     */
+    public long getOverBudgetCount() {
+        return this.budget.getExceededCount();
+    }
+
+    @Override
+    public void processMessage(@Nonnull TargetedMessage message) {
+        Object data = message.getCustomData().get(this.value);
+        String matched = (data == null) ? null : this.findMatch(message.getOriginatingMessage().getMatchCache(), data.toString());
+        switch (this.action) {
+            case ALLOW:
+                if (matched == null) {
+                    message.reject();
+                }
+                break;
+            case DROP:
+                if (matched != null) {
+                    message.reject();
+                }
+                break;
+            case REPLACE:
+                if (matched != null) {
+                    String replaced = data.toString();
+                    try {
+                        if (this.combined != null) {
+                            replaced = this.replace(this.combined, replaced);
+                        }
+                        for (Pattern pattern : this.separate) {
+                            replaced = this.replace(pattern, replaced);
+                        }
+                        message.getCustomData().put(this.value, replaced);
+                    } catch (BudgetedCharSequence.BudgetExceededException e) {
+                        this.budget.recordExceeded();
+                    }
+                }
+                break;
+            default:
+                // panic
+        }
+        if (matched != null && !message.isRejected()) {
+            message.getCustomData().put(MATCHED_PATTERN, matched);
+        }
+    }
+
+    @Nonnull
+    private String replace(@Nonnull Pattern pattern, @Nonnull String input) {
+        Matcher matcher = pattern.matcher(this.budget.wrap(input));
+        if (this.match == RegexFilter.Match.FULL) {
+            // Replacements cannot refer to groups, so a full match is replaced outright
+            return matcher.matches() ? this.replacement : input;
+        }
+        return matcher.replaceAll(this.replacement);
+    }
+
+    @Nullable
+    private String findMatch(@Nonnull MatchCache cache, @Nonnull String input) {
+        boolean overBudgetMatch = false;
+        if (this.combined != null) {
+            Matcher matcher = this.combined.matcher(this.budget.wrap(input));
+            try {
+                if ((this.match == RegexFilter.Match.FULL) ? matcher.matches() : matcher.find()) {
+                    for (int i = 0; i < this.combinedGroups.length; i++) {
+                        if (matcher.start(this.combinedGroups[i]) != -1) {
+                            return this.combinedSources[i];
+                        }
+                    }
+                }
+            } catch (BudgetedCharSequence.BudgetExceededException e) {
+                overBudgetMatch = this.budget.isMatch(MatchCache.Result.OVER_BUDGET);
+            }
+        }
+        long steps = this.budget.getSteps();
+        for (Pattern pattern : this.separate) {
+            if (this.budget.isMatch((this.match == RegexFilter.Match.FULL) ? cache.matches(pattern, input, steps) : cache.find(pattern, input, steps))) {
+                return pattern.pattern();
+            }
+        }
+        if (overBudgetMatch) {
+            return OVER_BUDGET;
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isPredicate() {
+        return this.action != RegexFilter.Action.REPLACE;
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getReadKeys() {
+        return Collections.singleton(this.value);
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getWrittenKeys() {
+        switch (this.action) {
+            case REPLACE:
+                return new HashSet<>(Arrays.asList(this.value, MATCHED_PATTERN.getName()));
+            case DROP:
+                // Only rejects when matched
+                return Collections.emptySet();
+            default:
+                return Collections.singleton(MATCHED_PATTERN.getName());
+        }
+    }
+}
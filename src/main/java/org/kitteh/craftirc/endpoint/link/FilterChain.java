@@ -0,0 +1,158 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.endpoint.link;
+
+import org.kitteh.craftirc.endpoint.filter.Filter;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An ordering of a link's filters for execution.
+ * <p/>
+ * Filters keep their configured order, except that predicates move ahead
+ * of any earlier filters they commute with: neither writes what the other
+ * reads or writes. Among predicates, those rejecting the most per unit of
+ * time go first, once enough calls have been measured.
+ */
+final class FilterChain {
+    static final class Entry {
+        private final Filter filter;
+        private final FilterStats stats = new FilterStats();
+
+        Entry(@Nonnull Filter filter) {
+            this.filter = filter;
+        }
+
+        @Nonnull
+        Filter getFilter() {
+            return this.filter;
+        }
+
+        @Nonnull
+        FilterStats getStats() {
+            return this.stats;
+        }
+
+        private double getRank() {
+            if (this.stats.getCalls() < MINIMUM_CALLS) {
+                return Double.POSITIVE_INFINITY;
+            }
+            double rejectRate = this.stats.getRejectRate();
+            return (rejectRate == 0) ? Double.POSITIVE_INFINITY : (this.stats.getMeanNanos() / rejectRate);
+        }
+    }
+
+    static final FilterChain EMPTY = new FilterChain(Collections.emptyList());
+
+    private static final long MINIMUM_CALLS = 256;
+
+    private final List<Entry> configured;
+    private final Entry[] ordered;
+
+    /**
+     * Compiles a chain.
+     *
+     * @param configured entries in configured order
+     */
+    FilterChain(@Nonnull List<Entry> configured) {
+        this.configured = configured;
+        List<Entry> ordered = new ArrayList<>(configured.size());
+        for (Entry entry : configured) {
+            int index = ordered.size();
+            if (entry.filter.isPredicate()) {
+                double rank = entry.getRank();
+                while (index > 0) {
+                    Entry before = ordered.get(index - 1);
+                    if (!commutes(entry.filter, before.filter) || (before.filter.isPredicate() && !(rank < before.getRank()))) {
+                        break;
+                    }
+                    index--;
+                }
+            }
+            ordered.add(index, entry);
+        }
+        this.ordered = ordered.toArray(new Entry[ordered.size()]);
+    }
+
+    /**
+     * Gets the entries in configured order.
+     *
+     * @return configured entries
+     */
+    @Nonnull
+    List<Entry> getConfigured() {
+        return this.configured;
+    }
+
+    /**
+     * Gets the entries in execution order.
+     *
+     * @return ordered entries, not to be modified
+     */
+    @Nonnull
+    Entry[] getOrdered() {
+        return this.ordered;
+    }
+
+    /**
+     * Compiles a new chain over the same entries using current stats.
+     *
+     * @return recompiled chain
+     */
+    @Nonnull
+    FilterChain recompile() {
+        return new FilterChain(this.configured);
+    }
+
+    /**
+     * Compiles a new chain with an entry added.
+     *
+     * @param filter filter to add
+     * @return new chain
+     */
+    @Nonnull
+    FilterChain with(@Nonnull Filter filter) {
+        List<Entry> configured = new ArrayList<>(this.configured);
+        configured.add(new Entry(filter));
+        return new FilterChain(configured);
+    }
+
+    private static boolean commutes(@Nonnull Filter moving, @Nonnull Filter other) {
+        Set<String> reads = moving.getReadKeys();
+        Set<String> writes = moving.getWrittenKeys();
+        Set<String> otherWrites = other.getWrittenKeys();
+        if ((reads == null) || (writes == null) || (otherWrites == null) || !Collections.disjoint(reads, otherWrites)) {
+            return false;
+        }
+        if (writes.isEmpty()) {
+            return true;
+        }
+        Set<String> otherReads = other.getReadKeys();
+        return (otherReads != null) && Collections.disjoint(writes, otherReads) && Collections.disjoint(writes, otherWrites);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.endpoint.link;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how often a filter on a link runs, passes, rejects and fails, and
+ * samples how long it takes. Timing every {@value #SAMPLE_INTERVAL}th call
+ * keeps the clock reads off most calls. Message transformations a filter
+ * deferred are timed whenever they run, and added to its cost.
+ */
+public final class FilterStats {
+    private static final int SAMPLE_INTERVAL = 16;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong rejects = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong sampledCalls = new AtomicLong();
+    private final AtomicLong sampledNanos = new AtomicLong();
+    private final AtomicLong deferredNanos = new AtomicLong();
+
+    /**
+     * Records the start of a call.
+     *
+     * @return true if this call should be timed
+     */
+    boolean startCall() {
+        return (this.calls.incrementAndGet() % SAMPLE_INTERVAL) == 0;
+    }
+
+    void recordTime(long nanos) {
+        this.sampledCalls.incrementAndGet();
+        this.sampledNanos.addAndGet(nanos);
+    }
+
+    void recordDeferredTime(long nanos) {
+        this.deferredNanos.addAndGet(nanos);
+    }
+
+    void recordReject() {
+        this.rejects.incrementAndGet();
+    }
+
+    void recordError() {
+        this.errors.incrementAndGet();
+    }
+
+    /**
+     * Gets the number of calls.
+     *
+     * @return call count
+     */
+    public long getCalls() {
+        return this.calls.get();
+    }
+
+    /**
+     * Gets the number of calls which rejected the message.
+     *
+     * @return reject count
+     */
+    public long getRejects() {
+        return this.rejects.get();
+    }
+
+    /**
+     * Gets the number of calls which threw.
+     *
+     * @return error count
+     */
+    public long getErrors() {
+        return this.errors.get();
+    }
+
+    /**
+     * Gets the number of calls which neither rejected the message nor threw,
+     * including any still running.
+     *
+     * @return pass count
+     */
+    public long getPasses() {
+        return Math.max(0, this.calls.get() - this.rejects.get() - this.errors.get());
+    }
+
+    /**
+     * Gets the fraction of calls which rejected the message.
+     *
+     * @return reject rate, or 0 if never called
+     */
+    public double getRejectRate() {
+        long calls = this.calls.get();
+        return (calls == 0) ? 0 : ((double) this.rejects.get() / calls);
+    }
+
+    /**
+     * Gets the mean time per call, from sampled calls, plus the mean time
+     * spent on transformations deferred by calls.
+     *
+     * @return mean nanoseconds, or 0 if none sampled
+     */
+    public double getMeanNanos() {
+        long sampled = this.sampledCalls.get();
+        if (sampled == 0) {
+            return 0;
+        }
+        return ((double) this.sampledNanos.get() / sampled) + ((double) this.deferredNanos.get() / this.calls.get());
+    }
+
+    /**
+     * Gets the estimated time spent in all calls, extrapolated from sampled
+     * calls.
+     *
+     * @return estimated total nanoseconds
+     */
+    public double getEstimatedTotalNanos() {
+        return this.getMeanNanos() * this.calls.get();
+    }
+
+    /**
+     * Gets a one-line summary of these stats.
+     *
+     * @return summary
+     */
+    @Nonnull
+    public String getSummary() {
+        return String.format("n=%d pass=%d reject=%d error=%d mean=%.1fus total=%.1fms", this.getCalls(),
+                this.getPasses(), this.getRejects(), this.getErrors(),
+                this.getMeanNanos() / 1000.0, this.getEstimatedTotalNanos() / 1000000.0);
+    }
+}
@@ -27,11 +27,15 @@ import ninja.leaping.configurate.ConfigurationNode;
 import org.kitteh.craftirc.CraftIRC;
 import org.kitteh.craftirc.endpoint.TargetedMessage;
 import org.kitteh.craftirc.endpoint.filter.Filter;
+import org.kitteh.craftirc.util.LatencyHistogram;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Endpoints are the origin and destination of messages tracked by CraftIRC.
@@ -56,7 +60,12 @@ public class Link {
 
     private final String source;
     private final String target;
-    private final List<Filter> filters = new CopyOnWriteArrayList<>();
+    private static final int RECOMPILE_INTERVAL = 4096;
+
+    private volatile FilterChain chain = FilterChain.EMPTY;
+    private final AtomicLong filtered = new AtomicLong();
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+    private final LatencyHistogram filterLatency = new LatencyHistogram();
 
     public Link(@Nonnull CraftIRC plugin, @Nonnull String source, @Nonnull String target, @Nullable List<? extends ConfigurationNode> filters) {
         this.source = source;
@@ -86,25 +95,123 @@ public class Link {
         return this.target;
     }
 
-    private void addFilter(@Nonnull Filter filter) {
-        this.filters.add(filter);
+    /**
+     * Gets the time messages over this Link spent waiting between being
+     * queued and starting filtering.
+     *
+     * @return queue latency
+     */
+    @Nonnull
+    public LatencyHistogram getQueueLatency() {
+        return this.queueLatency;
+    }
+
+    /**
+     * Gets the time messages over this Link spent in filters.
+     *
+     * @return filter latency
+     */
+    @Nonnull
+    public LatencyHistogram getFilterLatency() {
+        return this.filterLatency;
+    }
+
+    /**
+     * Gets the stats of each filter on this Link, in configured order.
+     *
+     * @return filters and their stats
+     */
+    @Nonnull
+    public Map<Filter, FilterStats> getFilterStats() {
+        Map<Filter, FilterStats> stats = new LinkedHashMap<>();
+        for (FilterChain.Entry entry : this.chain.getConfigured()) {
+            stats.put(entry.getFilter(), entry.getStats());
+        }
+        return stats;
+    }
+
+    private synchronized void addFilter(@Nonnull Filter filter) {
+        this.chain = this.chain.with(filter);
     }
 
     /**
      * Executes filters.
+     * <p/>
+     * Filters run in an order compiled from their configured order, their
+     * declared reads and writes, and measured cost and reject rate. The
+     * order is recompiled every {@value #RECOMPILE_INTERVAL} messages.
      *
      * @param message the message sent by the source
      */
     public void filterMessage(@Nonnull TargetedMessage message) {
-        for (Filter filter : this.filters) {
-            try {
-                filter.processMessage(message);
-                if (message.isRejected()) {
-                    return;
+        long start = System.nanoTime();
+        this.queueLatency.record(start - message.getOriginatingMessage().getQueuedNanos());
+        if ((this.filtered.incrementAndGet() % RECOMPILE_INTERVAL) == 0) {
+            this.recompile();
+        }
+        try {
+            // The filter which deferred each pending transformation, in order
+            List<FilterChain.Entry> transformers = null;
+            for (FilterChain.Entry entry : this.chain.getOrdered()) {
+                FilterStats stats = entry.getStats();
+                boolean timed = stats.startCall();
+                long filterStart = timed ? System.nanoTime() : 0;
+                try {
+                    entry.getFilter().processMessage(message);
+                    if (message.isRejected()) {
+                        stats.recordReject();
+                        return;
+                    }
+                } catch (Throwable thrown) {
+                    stats.recordError();
+                    CraftIRC.log().warn("Unable to process a received message", thrown);
+                } finally {
+                    if (timed) {
+                        stats.recordTime(System.nanoTime() - filterStart);
+                    }
                 }
+                int deferred = message.getDeferredTransformCount();
+                if (transformers == null) {
+                    if (deferred > 0) {
+                        transformers = new ArrayList<>(deferred);
+                    }
+                } else if (transformers.size() > deferred) {
+                    // Replaced, so all pending transformations were dropped
+                    transformers.clear();
+                }
+                while (transformers != null && transformers.size() < deferred) {
+                    transformers.add(entry);
+                }
+            }
+            if (transformers != null) {
+                this.applyDeferredTransforms(message, transformers);
+            }
+        } finally {
+            this.filterLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Applies transformations deferred by filters, so their failures and
+     * cost count against the filters which deferred them rather than
+     * surfacing when the Endpoint reads the message.
+     */
+    private void applyDeferredTransforms(@Nonnull TargetedMessage message, @Nonnull List<FilterChain.Entry> transformers) {
+        for (int i = 0; message.getDeferredTransformCount() > 0; i++) {
+            FilterStats stats = transformers.get(i).getStats();
+            long transformStart = System.nanoTime();
+            try {
+                message.applyDeferredTransform();
             } catch (Throwable thrown) {
+                stats.recordError();
                 CraftIRC.log().warn("Unable to process a received message", thrown);
+            } finally {
+                stats.recordDeferredTime(System.nanoTime() - transformStart);
             }
         }
     }
+
+    private synchronized void recompile() {
+        this.chain = this.chain.recompile();
+    }
 }
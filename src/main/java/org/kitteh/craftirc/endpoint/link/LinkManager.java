@@ -90,6 +90,18 @@ public final class LinkManager {
         return linkList;
     }
 
+    /**
+     * Gets all loaded Links.
+     *
+     * @return a list of every Link
+     */
+    @Nonnull
+    public List<Link> getLinks() {
+        List<Link> linkList = new LinkedList<>();
+        this.links.values().forEach(linkList::addAll);
+        return linkList;
+    }
+
     private void addLink(@Nonnull Link link) {
         List<Link> links = this.links.computeIfAbsent(link.getSource(), k -> new LinkedList<>());
         links.add(link);
@@ -0,0 +1,95 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.irc;
+
+import ninja.leaping.configurate.ConfigurationNode;
+import org.kitteh.craftirc.CraftIRC;
+import org.kitteh.irc.client.library.Client;
+
+import javax.annotation.Nonnull;
+
+/**
+ * One of the connections making up an {@link IRCBot}, with its own flood
+ * budget.
+ */
+final class BotConnection {
+    private final String name;
+    private final Client client;
+    private final SendQueue sendQueue;
+    private final ChannelNicks nicks;
+    private volatile boolean connected = false;
+
+    BotConnection(@Nonnull CraftIRC plugin, @Nonnull String name, @Nonnull Client client, @Nonnull ConfigurationNode floodControl) {
+        this.name = name;
+        this.client = client;
+        this.sendQueue = new SendQueue(plugin, name, client, floodControl);
+        this.sendQueue.setPaused(true);
+        this.nicks = new ChannelNicks(client);
+    }
+
+    @Nonnull
+    String getName() {
+        return this.name;
+    }
+
+    @Nonnull
+    Client getClient() {
+        return this.client;
+    }
+
+    @Nonnull
+    SendQueue getSendQueue() {
+        return this.sendQueue;
+    }
+
+    @Nonnull
+    ChannelNicks getNicks() {
+        return this.nicks;
+    }
+
+    /**
+     * Gets if this connection is considered up. Connections start out
+     * down, and are up once registration with the server completes.
+     *
+     * @return true if connected
+     */
+    boolean isConnected() {
+        return this.connected;
+    }
+
+    /**
+     * Sets if this connection is up, pausing its sending while down.
+     *
+     * @param connected true if connected
+     * @return true if this changed the state
+     */
+    boolean setConnected(boolean connected) {
+        if (this.connected == connected) {
+            return false;
+        }
+        this.connected = connected;
+        this.sendQueue.setPaused(!connected);
+        return true;
+    }
+}
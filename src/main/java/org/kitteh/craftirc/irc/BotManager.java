@@ -27,9 +27,13 @@ import ninja.leaping.configurate.ConfigurationNode;
 import org.kitteh.craftirc.CraftIRC;
 import org.kitteh.irc.client.library.Client;
 import org.kitteh.irc.client.library.feature.auth.NickServ;
+import org.kitteh.irc.client.library.feature.sending.SingleDelaySender;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -66,6 +70,16 @@ public final class BotManager {
         return this.bots.get(name);
     }
 
+    /**
+     * Gets all bots.
+     *
+     * @return all bots
+     */
+    @Nonnull
+    public Collection<IRCBot> getBots() {
+        return Collections.unmodifiableCollection(this.bots.values());
+    }
+
     private void loadBots(@Nonnull List<? extends ConfigurationNode> list) {
         Set<String> usedBotNames = new HashSet<>();
         int nonMap = 0;
@@ -95,8 +109,27 @@ public final class BotManager {
     }
 
     private void addBot(@Nonnull String name, @Nonnull ConfigurationNode data) {
+        int connections = data.getNode("connections").getInt(1);
+        if (connections < 1) {
+            CraftIRC.log().warn(String.format("Bot %s needs at least one connection, using 1", name));
+            connections = 1;
+        }
+        List<Client> clients = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            clients.add(this.createClient(name, data, i, connections));
+        }
+        IRCBot bot = new IRCBot(this.plugin, name, clients, data.getNode("flood-control"));
+        clients.forEach(Client::connect);
+        this.bots.put(name, bot);
+    }
+
+    @Nonnull
+    private Client createClient(@Nonnull String name, @Nonnull ConfigurationNode data, int index, int connections) {
+        // Every connection after the first needs its own name and nick
+        String suffix = (index == 0) ? "" : String.valueOf(index + 1);
+        String clientName = (connections == 1) ? name : (name + '-' + (index + 1));
         Client.Builder botBuilder = Client.builder();
-        botBuilder.name(name);
+        botBuilder.name(clientName);
         botBuilder.serverHost(data.getNode("host").getString("localhost"));
         botBuilder.serverPort(data.getNode("port").getInt(6667));
         botBuilder.secure(data.getNode("ssl").getBoolean());
@@ -113,7 +146,9 @@ public final class BotManager {
             botBuilder.bindHost(bindHost.getString());
         }
         botBuilder.bindPort(bind.getNode("port").getInt(0));
-        botBuilder.nick(data.getNode("nick").getString("CraftIRC"));
+        botBuilder.nick(data.getNode("nick").getString("CraftIRC") + suffix);
+        // Lines are paced by the bot's own SendQueue, so the client sends them straight away
+        botBuilder.messageSendingQueueSupplier(SingleDelaySender.getSupplier(0));
 
         ConfigurationNode auth = data.getNode("auth");
         String authUser = auth.getNode("user").getString();
@@ -122,7 +157,7 @@ public final class BotManager {
 
         ConfigurationNode debug = data.getNode("debug-output");
         if (debug.getNode("exceptions").getBoolean()) {
-            botBuilder.exceptionListener(exception -> CraftIRC.log().warn("Exception on bot " + name, exception));
+            botBuilder.exceptionListener(exception -> CraftIRC.log().warn("Exception on bot " + clientName, exception));
         } else {
             botBuilder.exceptionListener(null);
         }
@@ -138,9 +173,6 @@ public final class BotManager {
         if (authUser != null && authPass != null) {
             newBot.getAuthManager().addProtocol(nickless ? new NicklessServ(newBot, authUser, authPass) : new NickServ(newBot, authUser, authPass));
         }
-
-        newBot.connect();
-
-        this.bots.put(name, new IRCBot(this.plugin, name, newBot));
+        return newBot;
     }
 }
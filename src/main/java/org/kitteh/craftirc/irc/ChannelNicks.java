@@ -0,0 +1,93 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.irc;
+
+import org.kitteh.irc.client.library.Client;
+import org.kitteh.irc.client.library.util.CIKeyMap;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks the nicknames in each channel a client is in, using the
+ * network's case mapping for both channels and nicknames.
+ */
+final class ChannelNicks {
+    private final Client client;
+    private final Map<String, Set<String>> channels;
+
+    ChannelNicks(@Nonnull Client client) {
+        this.client = client;
+        this.channels = new CIKeyMap<>(client);
+    }
+
+    @Nonnull
+    Set<String> get(@Nonnull String channel) {
+        Set<String> nicks = this.channels.get(channel);
+        return (nicks == null) ? Collections.emptySet() : Collections.unmodifiableSet(nicks);
+    }
+
+    void set(@Nonnull String channel, @Nonnull Collection<String> nicks) {
+        Set<String> set = this.createSet();
+        set.addAll(nicks);
+        this.channels.put(channel, set);
+    }
+
+    void add(@Nonnull String channel, @Nonnull String nick) {
+        this.channels.computeIfAbsent(channel, c -> this.createSet()).add(nick);
+    }
+
+    void remove(@Nonnull String channel, @Nonnull String nick) {
+        Set<String> nicks = this.channels.get(channel);
+        if (nicks != null) {
+            nicks.remove(nick);
+        }
+    }
+
+    void removeChannel(@Nonnull String channel) {
+        this.channels.remove(channel);
+    }
+
+    void removeEverywhere(@Nonnull String nick) {
+        for (Set<String> nicks : this.channels.values()) {
+            nicks.remove(nick);
+        }
+    }
+
+    void rename(@Nonnull String oldNick, @Nonnull String newNick) {
+        for (Set<String> nicks : this.channels.values()) {
+            if (nicks.remove(oldNick)) {
+                nicks.add(newNick);
+            }
+        }
+    }
+
+    @Nonnull
+    private Set<String> createSet() {
+        return Collections.newSetFromMap(new CIKeyMap<>(this.client));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.irc;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Assigns channels to a bot's connections by consistent hashing.
+ * <p/>
+ * Each connection is placed on a ring at {@value #POINTS} points, and a
+ * channel belongs to the first connected connection at or after the
+ * channel's own point. When a connection drops, only its channels move,
+ * spread over the others, and they move back when it returns. Names are
+ * hashed after lowercasing by the network's case mapping, so names the
+ * network considers equal always have the same owner.
+ */
+final class ConnectionRing {
+    private static final int POINTS = 160;
+
+    private final int[] points;
+    private final BotConnection[] owners;
+    private final UnaryOperator<String> lowerCase;
+
+    /**
+     * Creates a ring.
+     *
+     * @param name bot name, seeding the connections' points
+     * @param connections connections to place on the ring
+     * @param lowerCase lowercases a name by the network's case mapping
+     */
+    ConnectionRing(@Nonnull String name, @Nonnull List<BotConnection> connections, @Nonnull UnaryOperator<String> lowerCase) {
+        this.lowerCase = lowerCase;
+        int size = connections.size() * POINTS;
+        long[] ring = new long[size];
+        for (int i = 0; i < connections.size(); i++) {
+            for (int point = 0; point < POINTS; point++) {
+                // Point in the high bits for sorting, connection index in the low bits
+                long hash = ConnectionRing.hash(name + '#' + i + '#' + point);
+                ring[(i * POINTS) + point] = (hash << 32) | i;
+            }
+        }
+        Arrays.sort(ring);
+        this.points = new int[size];
+        this.owners = new BotConnection[size];
+        for (int i = 0; i < size; i++) {
+            this.points[i] = (int) (ring[i] >> 32);
+            this.owners[i] = connections.get((int) ring[i]);
+        }
+    }
+
+    /**
+     * Gets the connection responsible for a channel or other target.
+     *
+     * @param target target name
+     * @return the first connected owner, or the first owner if none are
+     * connected
+     */
+    @Nonnull
+    BotConnection getOwner(@Nonnull String target) {
+        int index = Arrays.binarySearch(this.points, ConnectionRing.hash(this.lowerCase.apply(target)));
+        if (index < 0) {
+            index = -(index + 1);
+        }
+        for (int i = 0; i < this.owners.length; i++) {
+            BotConnection owner = this.owners[(index + i) % this.owners.length];
+            if (owner.isConnected()) {
+                return owner;
+            }
+        }
+        return this.owners[index % this.owners.length];
+    }
+
+    private static int hash(@Nonnull String key) {
+        // Spread String.hashCode so similar names land far apart
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        hash *= 0xC2B2AE35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
@@ -23,6 +23,7 @@
  */
 package org.kitteh.craftirc.irc;
 
+import ninja.leaping.configurate.ConfigurationNode;
 import org.kitteh.craftirc.CraftIRC;
 import org.kitteh.craftirc.endpoint.Endpoint;
 import org.kitteh.craftirc.endpoint.Message;
@@ -32,33 +33,63 @@ import org.kitteh.irc.client.library.element.Channel;
 import org.kitteh.irc.client.library.element.User;
 import org.kitteh.irc.client.library.element.mode.ChannelUserMode;
 import org.kitteh.irc.client.library.event.channel.ChannelCtcpEvent;
+import org.kitteh.irc.client.library.event.channel.ChannelJoinEvent;
+import org.kitteh.irc.client.library.event.channel.ChannelKickEvent;
 import org.kitteh.irc.client.library.event.channel.ChannelMessageEvent;
+import org.kitteh.irc.client.library.event.channel.ChannelPartEvent;
+import org.kitteh.irc.client.library.event.channel.ChannelUsersUpdatedEvent;
+import org.kitteh.irc.client.library.event.client.ClientConnectionEndedEvent;
+import org.kitteh.irc.client.library.event.client.ClientNegotiationCompleteEvent;
+import org.kitteh.irc.client.library.event.user.UserNickChangeEvent;
+import org.kitteh.irc.client.library.event.user.UserQuitEvent;
 import org.kitteh.irc.client.library.util.CIKeyMap;
 import net.engio.mbassy.listener.Handler;
 
 import javax.annotation.Nonnull;
-import java.util.HashMap;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.ToLongFunction;
 
 /**
- * Wraps an IRC client and handles events.
+ * Wraps a pool of IRC clients and handles events.
+ * <p/>
+ * Each channel is owned by one client, chosen by a {@link ConnectionRing},
+ * which joins it, relays from it and sends to it. When a client
+ * disconnects its channels, and anything waiting to be sent to them, move
+ * to the remaining clients, and move back once it reconnects.
  */
 public final class IRCBot {
-    private final Client client;
+    private final List<BotConnection> connections;
+    private final ConnectionRing ring;
     private final String name;
     private final Map<String, Set<IRCEndpoint>> channels;
+    private final Map<String, BotConnection> owners;
     private final CraftIRC plugin;
 
-    IRCBot(@Nonnull CraftIRC plugin, @Nonnull String name, @Nonnull Client client) {
+    IRCBot(@Nonnull CraftIRC plugin, @Nonnull String name, @Nonnull List<Client> clients, @Nonnull ConfigurationNode floodControl) {
         this.plugin = plugin;
-        this.client = client;
-        this.channels = new CIKeyMap<>(client);
         this.name = name;
-        this.client.getEventManager().registerEventListener(new Listener());
+        List<BotConnection> connections = new ArrayList<>(clients.size());
+        for (int i = 0; i < clients.size(); i++) {
+            String connectionName = (clients.size() == 1) ? name : (name + " #" + (i + 1));
+            connections.add(new BotConnection(plugin, connectionName, clients.get(i), floodControl));
+        }
+        this.connections = Collections.unmodifiableList(connections);
+        // Names are compared by the first client's case mapping, the same as CIKeyMap does
+        Client first = clients.get(0);
+        this.ring = new ConnectionRing(name, this.connections, target -> first.getServerInfo().getCaseMapping().toLowerCase(target));
+        this.channels = new CIKeyMap<>(first);
+        this.owners = new CIKeyMap<>(first);
+        for (BotConnection connection : this.connections) {
+            connection.getClient().getEventManager().registerEventListener(new Listener(connection));
+        }
     }
 
     /**
@@ -71,51 +102,207 @@ public final class IRCBot {
         return this.name;
     }
 
+    /**
+     * Gets the nicknames currently in a channel, as seen by the bot.
+     * Lookups follow the network's case mapping.
+     *
+     * @param channel channel name
+     * @return nicknames in the channel, empty if unknown
+     */
+    @Nonnull
+    public Set<String> getNicks(@Nonnull String channel) {
+        return this.getConnection(channel).getNicks().get(channel);
+    }
+
+    /**
+     * Gets the number of connections in this bot's pool.
+     *
+     * @return connection count
+     */
+    public int getConnectionCount() {
+        return this.connections.size();
+    }
+
+    /**
+     * Gets the number of connections currently up.
+     *
+     * @return connected count
+     */
+    public int getConnectedCount() {
+        int connected = 0;
+        for (BotConnection connection : this.connections) {
+            if (connection.isConnected()) {
+                connected++;
+            }
+        }
+        return connected;
+    }
+
     /**
      * Adds a channel to the bot, which will join when possible.
      *
      * @param endpoint endpoint this channel is assigned to
      * @param channel channel to join
      */
-    public void addChannel(@Nonnull IRCEndpoint endpoint, @Nonnull String channel) {
-        this.client.addChannel(channel);
+    public synchronized void addChannel(@Nonnull IRCEndpoint endpoint, @Nonnull String channel) {
+        if (!this.owners.containsKey(channel)) {
+            BotConnection owner = this.ring.getOwner(channel);
+            owner.getClient().addChannel(channel);
+            this.owners.put(channel, owner);
+        }
         Set<IRCEndpoint> points = this.channels.computeIfAbsent(channel, k -> new CopyOnWriteArraySet<>());
         points.add(endpoint);
     }
 
     /**
-     * Sends a message to the named channel.
+     * Sends a message to the named channel, paced by the bot's flood
+     * control as a {@link Message.Category#SYSTEM} message.
      *
      * @param target target channel
      * @param message message to send
      */
     public void sendMessage(@Nonnull Channel target, @Nonnull String message) {
-        this.client.sendMessage(target.getName(), message);
+        this.sendMessage(target.getName(), message);
     }
 
     /**
-     * Sends a message to the named target.
+     * Sends a message to the named target, paced by the bot's flood
+     * control as a {@link Message.Category#SYSTEM} message.
      *
      * @param target target
      * @param message message to send
      */
     public void sendMessage(@Nonnull String target, @Nonnull String message) {
-        this.client.sendMessage(target, message);
+        this.sendMessage(target, message, Message.Category.SYSTEM);
+    }
+
+    /**
+     * Sends a message to the named target, paced by the bot's flood
+     * control. Under load, messages may be merged with others to the same
+     * target, and {@link Message.Category#PRESENCE} messages summarized.
+     *
+     * @param target target
+     * @param message message to send
+     * @param category class of the message
+     */
+    public void sendMessage(@Nonnull String target, @Nonnull String message, @Nonnull Message.Category category) {
+        this.sendMessage(target, message, category, null);
+    }
+
+    /**
+     * Sends a message to the named target, paced by the bot's flood
+     * control. Long messages are split to fit a line, and messages from the
+     * same sender may be packed into one line.
+     *
+     * @param target target
+     * @param message message to send
+     * @param category class of the message
+     * @param sender who the message is from, or null if not to be packed
+     */
+    public void sendMessage(@Nonnull String target, @Nonnull String message, @Nonnull Message.Category category, @Nullable String sender) {
+        this.getConnection(target).getSendQueue().add(target, category, sender, message);
+    }
+
+    /**
+     * Gets the number of messages waiting to be sent.
+     *
+     * @return send queue depth
+     */
+    public int getQueuedMessageCount() {
+        int depth = 0;
+        for (BotConnection connection : this.connections) {
+            depth += connection.getSendQueue().getDepth();
+        }
+        return depth;
+    }
+
+    /**
+     * Gets the number of messages dropped because the send queue was full.
+     *
+     * @return dropped message count
+     */
+    public long getDroppedMessageCount() {
+        return this.sum(SendQueue::getDroppedCount);
+    }
+
+    /**
+     * Gets the number of messages merged into an earlier waiting message.
+     *
+     * @return merged message count
+     */
+    public long getMergedMessageCount() {
+        return this.sum(SendQueue::getMergedCount);
+    }
+
+    /**
+     * Gets the number of presence messages replaced by a summary.
+     *
+     * @return summarized message count
+     */
+    public long getSummarizedMessageCount() {
+        return this.sum(SendQueue::getSummarizedCount);
+    }
+
+    private long sum(@Nonnull ToLongFunction<SendQueue> counter) {
+        long sum = 0;
+        for (BotConnection connection : this.connections) {
+            sum += counter.applyAsLong(connection.getSendQueue());
+        }
+        return sum;
+    }
+
+    @Nonnull
+    private BotConnection getConnection(@Nonnull String target) {
+        BotConnection owner = this.owners.get(target);
+        return (owner == null) ? this.ring.getOwner(target) : owner;
+    }
+
+    /**
+     * Reassigns channels after a connection went down or came back up,
+     * then moves anything waiting for a moved channel to its new owner.
+     */
+    private synchronized void rebalance() {
+        int moved = 0;
+        for (String channel : this.channels.keySet()) {
+            BotConnection owner = this.ring.getOwner(channel);
+            BotConnection previous = this.owners.put(channel, owner);
+            if (previous != owner) {
+                if (previous != null) {
+                    previous.getClient().removeChannel(channel);
+                    previous.getNicks().removeChannel(channel);
+                }
+                owner.getClient().addChannel(channel);
+                moved++;
+            }
+        }
+        // A previous owner may still be up, handing channels back to a
+        // connection that returned, so every queue gives up what moved
+        for (BotConnection connection : this.connections) {
+            connection.getSendQueue().moveTo(target -> this.getConnection(target).getSendQueue());
+        }
+        if (moved > 0) {
+            CraftIRC.log().info(String.format("Bot %s moved %d channels, %d of %d connections up", this.name, moved, this.getConnectedCount(), this.connections.size()));
+        }
     }
 
     void shutdown() {
-        this.client.shutdown("CraftIRC!");
+        for (BotConnection connection : this.connections) {
+            connection.getClient().shutdown("CraftIRC!");
+        }
     }
 
-    private void sendMessage(@Nonnull User sender, @Nonnull Channel channel, @Nonnull String message, @Nonnull IRCEndpoint.MessageType messageType) {
+    private void sendMessage(@Nonnull BotConnection connection, @Nonnull User sender, @Nonnull Channel channel, @Nonnull String message, @Nonnull IRCEndpoint.MessageType messageType) {
         final String channelName = channel.getName();
-        if (!this.channels.containsKey(channelName)) {
+        // Only the owner relays, in case another connection is yet to leave
+        if (!this.channels.containsKey(channelName) || this.owners.get(channelName) != connection) {
             return;
         }
-        Map<String, Object> data = new HashMap<>();
-        data.put(IRCEndpoint.IRC_CHANNEL, channel.getName());
-        data.put(IRCEndpoint.IRC_MASK, sender.getName());
-        data.put(IRCEndpoint.IRC_MESSAGE_TYPE, messageType);
+        final String nick = sender.getNick();
+        Message.Builder builder = Message.builder()
+                .category(messageType.getCategory())
+                .data(IRCEndpoint.IRC_CHANNEL, channel.getName())
+                .data(IRCEndpoint.IRC_MASK, sender.getName())
+                .data(IRCEndpoint.IRC_MESSAGE_TYPE, messageType);
         StringBuilder modes = new StringBuilder();
         Optional<SortedSet<ChannelUserMode>> userModes = channel.getUserModes(sender);
         userModes.ifPresent(channelUserModes -> {
@@ -123,29 +310,87 @@ public final class IRCBot {
                 modes.append(mode.getNickPrefix());
             }
         });
-        data.put(IRCEndpoint.IRC_PREFIX, (modes.length() == 0) ? "" : modes.charAt(0));
-        data.put(IRCEndpoint.IRC_PREFIXES, modes.toString());
-        data.put(IRCEndpoint.IRC_NICK, sender.getNick());
-        data.put(Endpoint.MESSAGE_FORMAT, messageType.getFormat());
-        data.put(Endpoint.MESSAGE_TEXT, message);
-        data.put(Endpoint.SENDER_NAME, sender.getNick());
-        String formatted = String.format(messageType.getFormat(), sender.getNick(), message);
+        builder.data(IRCEndpoint.IRC_PREFIX, (modes.length() == 0) ? "" : String.valueOf(modes.charAt(0)))
+                .data(IRCEndpoint.IRC_PREFIXES, modes.toString())
+                .data(IRCEndpoint.IRC_NICK, nick)
+                .data(Endpoint.MESSAGE_FORMAT, messageType.getFormat())
+                .data(Endpoint.MESSAGE_TEXT, message)
+                .data(Endpoint.SENDER_NAME, nick)
+                .defaultMessage(() -> String.format(messageType.getFormat(), nick, message));
         for (IRCEndpoint endpoint : this.channels.get(channelName)) {
-            this.plugin.getEndpointManager().sendMessage(new Message(endpoint, formatted, data));
+            this.plugin.getEndpointManager().sendMessage(builder.source(endpoint).build());
         }
     }
 
     private class Listener {
+        private final BotConnection connection;
+
+        private Listener(@Nonnull BotConnection connection) {
+            this.connection = connection;
+        }
+
+        @Handler
+        public void connected(@Nonnull ClientNegotiationCompleteEvent event) {
+            if (this.connection.setConnected(true)) {
+                IRCBot.this.rebalance();
+            }
+        }
+
+        @Handler
+        public void disconnected(@Nonnull ClientConnectionEndedEvent event) {
+            if (this.connection.setConnected(false)) {
+                IRCBot.this.rebalance();
+            }
+        }
+
         @Handler
         public void message(@Nonnull ChannelMessageEvent event) {
             User user = event.getActor();
-            IRCBot.this.sendMessage(user, event.getChannel(), event.getMessage(), IRCEndpoint.MessageType.MESSAGE);
+            IRCBot.this.sendMessage(this.connection, user, event.getChannel(), event.getMessage(), IRCEndpoint.MessageType.MESSAGE);
         }
 
         @Handler
         public void action(@Nonnull ChannelCtcpEvent event) {
             if (event.getMessage().startsWith("ACTION ")) {
-                IRCBot.this.sendMessage(event.getActor(), event.getChannel(), event.getMessage().substring("ACTION ".length()), IRCEndpoint.MessageType.ME);
+                IRCBot.this.sendMessage(this.connection, event.getActor(), event.getChannel(), event.getMessage().substring("ACTION ".length()), IRCEndpoint.MessageType.ME);
+            }
+        }
+
+        @Handler
+        public void users(@Nonnull ChannelUsersUpdatedEvent event) {
+            this.connection.getNicks().set(event.getChannel().getName(), event.getChannel().getNicknames());
+        }
+
+        @Handler
+        public void join(@Nonnull ChannelJoinEvent event) {
+            this.connection.getNicks().add(event.getChannel().getName(), event.getUser().getNick());
+        }
+
+        @Handler
+        public void part(@Nonnull ChannelPartEvent event) {
+            this.leave(event.getChannel().getName(), event.getUser().getNick());
+        }
+
+        @Handler
+        public void kick(@Nonnull ChannelKickEvent event) {
+            this.leave(event.getChannel().getName(), event.getTarget().getNick());
+        }
+
+        @Handler
+        public void quit(@Nonnull UserQuitEvent event) {
+            this.connection.getNicks().removeEverywhere(event.getUser().getNick());
+        }
+
+        @Handler
+        public void nick(@Nonnull UserNickChangeEvent event) {
+            this.connection.getNicks().rename(event.getOldUser().getNick(), event.getNewUser().getNick());
+        }
+
+        private void leave(@Nonnull String channel, @Nonnull String nick) {
+            if (nick.equalsIgnoreCase(this.connection.getClient().getNick())) {
+                this.connection.getNicks().removeChannel(channel);
+            } else {
+                this.connection.getNicks().remove(channel, nick);
             }
         }
     }
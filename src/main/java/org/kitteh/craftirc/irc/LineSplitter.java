@@ -0,0 +1,210 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.irc;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits lines to fit a limit in UTF-8 bytes.
+ * <p/>
+ * Lines are split at the last space which fits, or mid-word if a word is
+ * too long, but never inside a color code or a surrogate pair. Each
+ * continuation starts with the color and styles in effect where the
+ * previous piece ended.
+ */
+final class LineSplitter {
+    private static final char COLOR = '\u0003';
+    private static final char RESET = '\u000F';
+    private static final String STYLES = "\u0002\u001D\u001F\u0016";
+
+    private LineSplitter() {
+    }
+
+    /**
+     * Gets the length of text once encoded as UTF-8.
+     *
+     * @param text text to measure
+     * @return length in bytes
+     */
+    static int getByteLength(@Nonnull CharSequence text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            bytes += LineSplitter.getByteLength(text.charAt(i));
+        }
+        return bytes;
+    }
+
+    /**
+     * Splits a line.
+     *
+     * @param line line to split
+     * @param maxBytes most bytes per piece
+     * @return pieces, in order
+     */
+    @Nonnull
+    static List<String> split(@Nonnull String line, int maxBytes) {
+        if (LineSplitter.getByteLength(line) <= maxBytes) {
+            return Collections.singletonList(line);
+        }
+        List<String> pieces = new ArrayList<>();
+        String carry = "";
+        int start = 0;
+        while (start < line.length()) {
+            int budget = maxBytes - LineSplitter.getByteLength(carry);
+            int bytes = 0;
+            int end = start;
+            int lastSpace = -1;
+            while (end < line.length()) {
+                int unit = LineSplitter.getUnitLength(line, end);
+                int unitBytes = LineSplitter.getByteLength(line.subSequence(end, end + unit));
+                if ((bytes + unitBytes) > budget) {
+                    break;
+                }
+                if (line.charAt(end) == ' ') {
+                    lastSpace = end;
+                }
+                bytes += unitBytes;
+                end += unit;
+            }
+            if (end == line.length()) {
+                pieces.add(carry + line.substring(start));
+                break;
+            }
+            if (line.charAt(end) == ' ') {
+                lastSpace = end;
+            }
+            int cut = (lastSpace > start) ? lastSpace : end;
+            if (cut == start) {
+                // Not even one unit fits after the carried formatting
+                if (carry.isEmpty()) {
+                    cut = start + LineSplitter.getUnitLength(line, start);
+                } else {
+                    carry = "";
+                    continue;
+                }
+            }
+            String piece = carry + line.substring(start, cut);
+            pieces.add(piece);
+            carry = LineSplitter.getFormatting(piece);
+            start = (cut == lastSpace) ? (cut + 1) : cut;
+        }
+        return pieces;
+    }
+
+    private static int getByteLength(char c) {
+        if (c < 0x80) {
+            return 1;
+        }
+        if (c < 0x800) {
+            return 2;
+        }
+        // Half of a surrogate pair, 4 bytes for the pair
+        return Character.isSurrogate(c) ? 2 : 3;
+    }
+
+    /**
+     * Gets the length of the unsplittable unit starting at an index: a
+     * color code, a surrogate pair or a single character.
+     */
+    private static int getUnitLength(@Nonnull String line, int index) {
+        char c = line.charAt(index);
+        if (c == COLOR) {
+            int end = LineSplitter.skipDigits(line, index + 1);
+            if (end > (index + 1) && end < (line.length() - 1) && line.charAt(end) == ',' && Character.isDigit(line.charAt(end + 1))) {
+                end = LineSplitter.skipDigits(line, end + 1);
+            }
+            return end - index;
+        }
+        if (Character.isHighSurrogate(c) && (index + 1) < line.length() && Character.isLowSurrogate(line.charAt(index + 1))) {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static int skipDigits(@Nonnull String line, int index) {
+        int end = index;
+        while (end < line.length() && (end - index) < 2 && Character.isDigit(line.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Pads the numbers of a color code to two digits, so digits following
+     * it aren't read as part of it.
+     */
+    @Nonnull
+    private static String padColor(@Nonnull String numbers) {
+        StringBuilder color = new StringBuilder(6).append(COLOR);
+        for (String number : numbers.split(",")) {
+            if (color.length() > 1) {
+                color.append(',');
+            }
+            if (number.length() == 1) {
+                color.append('0');
+            }
+            color.append(number);
+        }
+        return color.toString();
+    }
+
+    /**
+     * Gets the codes restoring the color and styles in effect at the end
+     * of a piece.
+     */
+    @Nonnull
+    private static String getFormatting(@Nonnull String piece) {
+        String color = null;
+        boolean[] styles = new boolean[STYLES.length()];
+        for (int i = 0; i < piece.length(); ) {
+            char c = piece.charAt(i);
+            int unit = LineSplitter.getUnitLength(piece, i);
+            if (c == COLOR) {
+                color = (unit == 1) ? null : LineSplitter.padColor(piece.substring(i + 1, i + unit));
+            } else if (c == RESET) {
+                color = null;
+                styles = new boolean[STYLES.length()];
+            } else {
+                int style = STYLES.indexOf(c);
+                if (style >= 0) {
+                    styles[style] = !styles[style];
+                }
+            }
+            i += unit;
+        }
+        StringBuilder formatting = new StringBuilder();
+        if (color != null) {
+            formatting.append(color);
+        }
+        for (int i = 0; i < styles.length; i++) {
+            if (styles[i]) {
+                formatting.append(STYLES.charAt(i));
+            }
+        }
+        return formatting.toString();
+    }
+}
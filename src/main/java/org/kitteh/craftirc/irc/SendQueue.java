@@ -0,0 +1,397 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.irc;
+
+import ninja.leaping.configurate.ConfigurationNode;
+import org.kitteh.craftirc.CraftIRC;
+import org.kitteh.craftirc.endpoint.Message;
+import org.kitteh.craftirc.util.shutdownable.WackyWavingInterruptableArmFlailingThreadMan;
+import org.kitteh.irc.client.library.Client;
+import org.kitteh.irc.client.library.element.User;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Paces a client's outgoing lines with a token bucket, so bursts are held
+ * back here rather than getting the bot killed for flooding.
+ * <p/>
+ * Each line sent costs a token, and tokens refill at {@code rate} per
+ * second up to {@code burst}. When out of tokens, a new line is merged into
+ * the last waiting line of the same class for the same target.
+ * <p/>
+ * Lines are split to fit the protocol's 512 byte limit, counting the bot's
+ * own prefix as other clients see it. With a {@code pack-window}, lines
+ * from a sender wait that many milliseconds so any more lines from the
+ * same sender to the same target can be packed into them, as long as the
+ * packed line still fits.
+ * <p/>
+ * Once {@code presence-threshold} lines are waiting, presence lines such
+ * as joins and quits are only counted, and each target gets one summary
+ * line once the queue drains. If {@code capacity} lines are waiting, the
+ * oldest line of the least important class is dropped.
+ * <p/>
+ * Targets are compared by the network's case mapping, so lines to
+ * {@code #Chan} and {@code #chan} merge, pack and summarize together.
+ */
+final class SendQueue extends Thread {
+    private static final class Line {
+        private final String target;
+        private final String key;
+        private final Message.Category category;
+        private final String sender;
+        private final long notBefore;
+        private final int maxBytes;
+        private String text;
+        private int bytes;
+
+        private Line(@Nonnull String target, @Nonnull String key, @Nonnull Message.Category category, @Nullable String sender, long notBefore, int maxBytes, @Nonnull String text) {
+            this.target = target;
+            this.key = key;
+            this.category = category;
+            this.sender = sender;
+            this.notBefore = notBefore;
+            this.maxBytes = maxBytes;
+            this.text = text;
+            this.bytes = LineSplitter.getByteLength(text);
+        }
+    }
+
+    private static final String SUMMARY_FORMAT = "[%d join/quit messages not shown]";
+    private static final int LINE_BYTES = 512;
+    // Assumed when the server hasn't told us our own user and host
+    private static final int USER_BYTES = 10;
+    private static final int HOST_BYTES = 63;
+
+    private final Client client;
+    private final double tokensPerNano;
+    private final int burst;
+    private final int capacity;
+    private final int presenceThreshold;
+    private final long packWindowNanos;
+    private final String mergeSeparator;
+    private final int mergeSeparatorBytes;
+    private final ArrayDeque<Line> lines = new ArrayDeque<>();
+    private final Map<String, Integer> suppressed = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = this.lock.newCondition();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong merged = new AtomicLong();
+    private final AtomicLong summarized = new AtomicLong();
+    private double tokens;
+    private long lastRefill;
+    private boolean paused;
+
+    /**
+     * Creates and starts a queue.
+     *
+     * @param plugin the CraftIRC instance
+     * @param name bot name
+     * @param client client to send through
+     * @param settings flood control settings, possibly virtual
+     */
+    SendQueue(@Nonnull CraftIRC plugin, @Nonnull String name, @Nonnull Client client, @Nonnull ConfigurationNode settings) {
+        super("CraftIRC Send Queue - " + name);
+        this.setDaemon(true);
+        this.client = client;
+        double rate = settings.getNode("rate").getDouble(1);
+        if (rate <= 0) {
+            CraftIRC.log().warn(String.format("Bot %s flood-control rate must be positive, using 1", name));
+            rate = 1;
+        }
+        this.tokensPerNano = rate / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(1, settings.getNode("burst").getInt(5));
+        this.capacity = Math.max(1, settings.getNode("capacity").getInt(200));
+        this.presenceThreshold = Math.max(1, settings.getNode("presence-threshold").getInt(10));
+        this.packWindowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, settings.getNode("pack-window").getLong(0)));
+        this.mergeSeparator = settings.getNode("merge-separator").getString(" | ");
+        this.mergeSeparatorBytes = LineSplitter.getByteLength(this.mergeSeparator);
+        this.tokens = this.burst;
+        this.lastRefill = System.nanoTime();
+        plugin.trackShutdownable(new WackyWavingInterruptableArmFlailingThreadMan(this));
+        this.start();
+    }
+
+    /**
+     * Queues a line, splitting it if too long.
+     *
+     * @param target target
+     * @param category class of the line
+     * @param sender who the line is from, if packing lines by sender
+     * @param text line to send
+     */
+    void add(@Nonnull String target, @Nonnull Message.Category category, @Nullable String sender, @Nonnull String text) {
+        String key = this.toKey(target);
+        int maxBytes = this.getMaxBytes(target);
+        List<String> pieces = LineSplitter.split(text, maxBytes);
+        long notBefore = (sender == null) ? 0 : (System.nanoTime() + this.packWindowNanos);
+        int dropped = 0;
+        this.lock.lock();
+        try {
+            if (category == Message.Category.PRESENCE && this.lines.size() >= this.presenceThreshold) {
+                this.suppressed.merge(key, 1, Integer::sum);
+                this.summarized.incrementAndGet();
+                return;
+            }
+            for (String piece : pieces) {
+                Line line = new Line(target, key, category, sender, notBefore, maxBytes, piece);
+                if (this.merge(line)) {
+                    continue;
+                }
+                if (this.lines.size() >= this.capacity && !this.evict(category)) {
+                    dropped++;
+                    continue;
+                }
+                this.lines.add(line);
+                this.notEmpty.signal();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        if (dropped > 0) {
+            this.dropped.addAndGet(dropped);
+        }
+    }
+
+    /**
+     * Pauses or resumes sending, such as while disconnected. Lines are
+     * still queued while paused.
+     *
+     * @param paused true to pause
+     */
+    void setPaused(boolean paused) {
+        this.lock.lock();
+        try {
+            this.paused = paused;
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Moves waiting lines, and counts of lines to summarize, for targets
+     * this queue is no longer responsible for to the queues now
+     * responsible for them. Anything else stays where it is, in order.
+     *
+     * @param owners gets the queue responsible for a target
+     */
+    void moveTo(@Nonnull Function<String, SendQueue> owners) {
+        List<Line> moving = new ArrayList<>();
+        Map<String, Integer> moveSummaries = new LinkedHashMap<>();
+        this.lock.lock();
+        try {
+            Iterator<Line> lines = this.lines.iterator();
+            while (lines.hasNext()) {
+                Line line = lines.next();
+                if (owners.apply(line.target) != this) {
+                    moving.add(line);
+                    lines.remove();
+                }
+            }
+            Iterator<Map.Entry<String, Integer>> summaries = this.suppressed.entrySet().iterator();
+            while (summaries.hasNext()) {
+                Map.Entry<String, Integer> summary = summaries.next();
+                if (owners.apply(summary.getKey()) != this) {
+                    moveSummaries.put(summary.getKey(), summary.getValue());
+                    summaries.remove();
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        for (Line line : moving) {
+            owners.apply(line.target).add(line.target, line.category, line.sender, line.text);
+        }
+        moveSummaries.forEach((target, count) -> owners.apply(target).addSuppressed(target, count));
+    }
+
+    private void addSuppressed(@Nonnull String target, int count) {
+        this.lock.lock();
+        try {
+            this.suppressed.merge(target, count, Integer::sum);
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of lines waiting to be sent.
+     *
+     * @return queue depth
+     */
+    int getDepth() {
+        this.lock.lock();
+        try {
+            return this.lines.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    long getDroppedCount() {
+        return this.dropped.get();
+    }
+
+    long getMergedCount() {
+        return this.merged.get();
+    }
+
+    long getSummarizedCount() {
+        return this.summarized.get();
+    }
+
+    /**
+     * Gets the most bytes of text which fit in a line to a target, after
+     * {@code :nick!user@host PRIVMSG target :} and the line ending.
+     */
+    private int getMaxBytes(@Nonnull String target) {
+        String mask = this.client.getUser().map(User::getName).orElse(null);
+        int maskBytes = (mask == null) ? (LineSplitter.getByteLength(this.client.getNick()) + 1 + USER_BYTES + 1 + HOST_BYTES) : LineSplitter.getByteLength(mask);
+        return LINE_BYTES - (1 + maskBytes + " PRIVMSG ".length() + LineSplitter.getByteLength(target) + " :".length() + "\r\n".length());
+    }
+
+    /**
+     * Gets a target's name lowercased by the network's case mapping, so
+     * names the network considers equal are treated as one target.
+     */
+    @Nonnull
+    private String toKey(@Nonnull String target) {
+        return this.client.getServerInfo().getCaseMapping().toLowerCase(target);
+    }
+
+    private boolean merge(@Nonnull Line line) {
+        Iterator<Line> iterator = this.lines.descendingIterator();
+        while (iterator.hasNext()) {
+            Line waiting = iterator.next();
+            if (waiting.key.equals(line.key)) {
+                if (waiting.category != line.category || (waiting.bytes + this.mergeSeparatorBytes + line.bytes) > Math.min(waiting.maxBytes, line.maxBytes)) {
+                    return false;
+                }
+                boolean packing = (line.sender != null) && Objects.equals(waiting.sender, line.sender);
+                if (!packing && this.refill() == 0) {
+                    return false;
+                }
+                waiting.text = waiting.text + this.mergeSeparator + line.text;
+                waiting.bytes += this.mergeSeparatorBytes + line.bytes;
+                this.merged.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean evict(@Nonnull Message.Category arriving) {
+        Line victim = null;
+        for (Line line : this.lines) {
+            if (victim == null || line.category.ordinal() > victim.category.ordinal()) {
+                victim = line;
+            }
+        }
+        if (victim == null || victim.category.ordinal() < arriving.ordinal()) {
+            return false;
+        }
+        this.lines.removeFirstOccurrence(victim);
+        this.dropped.incrementAndGet();
+        return true;
+    }
+
+    @Nullable
+    private Line take() throws InterruptedException {
+        this.lock.lockInterruptibly();
+        try {
+            while (true) {
+                while (this.paused || (this.lines.isEmpty() && this.suppressed.isEmpty())) {
+                    this.notEmpty.await();
+                }
+                if (this.lines.size() < this.presenceThreshold && !this.suppressed.isEmpty()) {
+                    Iterator<Map.Entry<String, Integer>> iterator = this.suppressed.entrySet().iterator();
+                    while (iterator.hasNext() && this.lines.size() < this.presenceThreshold) {
+                        Map.Entry<String, Integer> entry = iterator.next();
+                        String target = entry.getKey();
+                        this.lines.add(new Line(target, target, Message.Category.SYSTEM, null, 0, this.getMaxBytes(target), String.format(SUMMARY_FORMAT, entry.getValue())));
+                        iterator.remove();
+                    }
+                }
+                Line head = this.lines.peek();
+                long nanos = Math.max(this.refill(), (head == null) ? 0 : (head.notBefore - System.nanoTime()));
+                if (nanos <= 0) {
+                    break;
+                }
+                this.notEmpty.awaitNanos(nanos);
+            }
+            Line line = this.lines.poll();
+            if (line != null) {
+                this.tokens -= 1;
+            }
+            return line;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Refills the bucket.
+     *
+     * @return nanoseconds until a token is available, or 0 if one is
+     */
+    private long refill() {
+        long now = System.nanoTime();
+        this.tokens = Math.min(this.burst, this.tokens + ((now - this.lastRefill) * this.tokensPerNano));
+        this.lastRefill = now;
+        return (this.tokens >= 1) ? 0 : Math.max(1, (long) Math.ceil((1 - this.tokens) / this.tokensPerNano));
+    }
+
+    @Override
+    public void run() {
+        while (!this.isInterrupted()) {
+            Line line;
+            try {
+                line = this.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (line != null) {
+                try {
+                    this.client.sendMessage(line.target, line.text);
+                } catch (Exception e) {
+                    CraftIRC.log().warn("Unable to send a line to " + line.target, e);
+                }
+            }
+        }
+    }
+}
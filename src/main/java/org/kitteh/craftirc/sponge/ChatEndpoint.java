@@ -46,6 +46,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
 
 /**
  * The standard {@link Endpoint} for minecraft chat messages.
@@ -58,33 +59,54 @@ public class ChatEndpoint extends MinecraftEndpoint {
 
     @Override
     protected void receiveMessage(@Nonnull TargetedMessage message) {
-        @SuppressWarnings("unchecked")
-        Set<MinecraftPlayer> recipients = (Set<MinecraftPlayer>) message.getCustomData().get(ChatEndpoint.RECIPIENT_NAMES);
+        Set<MinecraftPlayer> recipients = message.getCustomData().get(ChatEndpoint.RECIPIENT_NAMES);
         for (MinecraftPlayer recipient : recipients) {
             Optional<Player> player = this.getPlugin().getGame().getServer().getPlayer(recipient.getName());
             player.ifPresent(pl -> pl.sendMessage(TextSerializers.LEGACY_FORMATTING_CODE.deserialize(message.getCustomMessage())));
         }
     }
 
+    @Override
+    protected void receiveMessages(@Nonnull List<TargetedMessage> messages) {
+        Map<UUID, Player> online = new HashMap<>();
+        for (Player player : this.getPlugin().getGame().getServer().getOnlinePlayers()) {
+            online.put(player.getUniqueId(), player);
+        }
+        for (TargetedMessage message : messages) {
+            try {
+                Set<MinecraftPlayer> recipients = message.getCustomData().get(ChatEndpoint.RECIPIENT_NAMES);
+                Text text = TextSerializers.LEGACY_FORMATTING_CODE.deserialize(message.getCustomMessage());
+                for (MinecraftPlayer recipient : recipients) {
+                    Player player = online.get(recipient.getUniqueID());
+                    if (player != null) {
+                        player.sendMessage(text);
+                    }
+                }
+            } catch (Throwable thrown) {
+                CraftIRC.log().warn("Unable to deliver a message to Endpoint '" + this.getName() + "'", thrown);
+            }
+        }
+    }
+
     @Listener
     public void onChat(@Nonnull MessageChannelEvent.Chat event, @First Player player) {
         if (!event.getChannel().isPresent()) {
             return;
         }
-        Map<String, Object> data = new HashMap<>();
         Text text = event.getOriginalMessage();
         Set<MinecraftPlayer> recipients = this.collectionToMinecraftPlayer(event.getChannel().get().getMembers());
-        data.put(ChatEndpoint.RECIPIENT_NAMES, recipients);
+        Message.Builder builder = Message.builder().source(this).data(ChatEndpoint.RECIPIENT_NAMES, recipients);
         if (text instanceof TranslatableText) {
             TranslatableText trans = (TranslatableText) text;
             List<Object> args = trans.getArguments();
             String message, sender;
             if (args.size() == 2 && (sender = this.getStringFromStringOrText(args.get(0))) != null && (message = this.getStringFromStringOrText(args.get(1))) != null) {
                 String format = trans.getTranslation().get(Locale.ENGLISH);
-                data.put(Endpoint.MESSAGE_FORMAT, format);
-                data.put(Endpoint.MESSAGE_TEXT, message);
-                data.put(Endpoint.SENDER_NAME, sender);
-                this.getPlugin().getEndpointManager().sendMessage(new Message(this, String.format(format, sender, message), data));
+                builder.data(Endpoint.MESSAGE_FORMAT, format)
+                        .data(Endpoint.MESSAGE_TEXT, message)
+                        .data(Endpoint.SENDER_NAME, sender)
+                        .defaultMessage(() -> String.format(format, sender, message));
+                this.getPlugin().getEndpointManager().sendMessage(builder.build());
             }
         } else if (text instanceof LiteralText) {
             LiteralText literalText = (LiteralText) text;
@@ -99,10 +121,11 @@ public class ChatEndpoint extends MinecraftEndpoint {
                 Text three = texts.get(2);
                 if (one instanceof LiteralText && three instanceof LiteralText) {
                     String message = ((LiteralText) three).getContent();
-                    data.put(Endpoint.MESSAGE_TEXT, message);
                     String sender = TextSerializers.LEGACY_FORMATTING_CODE.serialize(one);
-                    data.put(Endpoint.SENDER_NAME, sender);
-                    this.getPlugin().getEndpointManager().sendMessage(new Message(this, String.format("<%s> %s", sender, message), data));
+                    builder.data(Endpoint.MESSAGE_TEXT, message)
+                            .data(Endpoint.SENDER_NAME, sender)
+                            .defaultMessage(() -> "<" + sender + "> " + message);
+                    this.getPlugin().getEndpointManager().sendMessage(builder.build());
                 }
             }
         }
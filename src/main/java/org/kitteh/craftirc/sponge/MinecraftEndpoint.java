@@ -25,6 +25,7 @@ package org.kitteh.craftirc.sponge;
 
 import org.kitteh.craftirc.CraftIRC;
 import org.kitteh.craftirc.endpoint.Endpoint;
+import org.kitteh.craftirc.endpoint.MessageKey;
 import org.kitteh.craftirc.endpoint.TargetedMessage;
 import org.kitteh.craftirc.util.MinecraftPlayer;
 import org.spongepowered.api.command.CommandSource;
@@ -44,7 +45,7 @@ import java.util.stream.Collectors;
  * Abstract root of Minecraft {$link}endpoints.
  */
 public abstract class MinecraftEndpoint extends Endpoint {
-    public static final String RECIPIENT_NAMES = "RECIPIENT_NAMES";
+    public static final MessageKey<Set<MinecraftPlayer>> RECIPIENT_NAMES = MessageKey.of("RECIPIENT_NAMES", Set.class);
 
     private final CraftIRC plugin;
 
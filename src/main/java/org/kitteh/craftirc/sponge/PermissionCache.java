@@ -0,0 +1,103 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.sponge;
+
+import org.kitteh.craftirc.CraftIRC;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.event.Listener;
+import org.spongepowered.api.event.network.ClientConnectionEvent;
+
+import javax.annotation.Nonnull;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches permission checks of online players by UUID.
+ * <p/>
+ * A player's decisions are forgotten when they join or leave, and each
+ * expires after {@value #TTL_SECONDS} seconds so permission changes made
+ * while online are picked up. Everything is forgotten on reload.
+ */
+public final class PermissionCache {
+    private static final class Decision {
+        private final boolean allowed;
+        private final long expiresNanos;
+
+        private Decision(boolean allowed, long expiresNanos) {
+            this.allowed = allowed;
+            this.expiresNanos = expiresNanos;
+        }
+    }
+
+    private static final long TTL_SECONDS = 30;
+    private static final long TTL_NANOS = TimeUnit.SECONDS.toNanos(TTL_SECONDS);
+
+    private final CraftIRC plugin;
+    private final Map<UUID, Map<String, Decision>> decisions = new ConcurrentHashMap<>();
+
+    public PermissionCache(@Nonnull CraftIRC plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Gets if an online player has a permission.
+     *
+     * @param uniqueId player UUID
+     * @param permission permission node
+     * @return true if the player is online and has the permission
+     */
+    public boolean hasPermission(@Nonnull UUID uniqueId, @Nonnull String permission) {
+        long now = System.nanoTime();
+        Map<String, Decision> playerDecisions = this.decisions.get(uniqueId);
+        if (playerDecisions != null) {
+            Decision decision = playerDecisions.get(permission);
+            if ((decision != null) && ((now - decision.expiresNanos) < 0)) {
+                return decision.allowed;
+            }
+        }
+        Optional<Player> player = this.plugin.getGame().getServer().getPlayer(uniqueId);
+        if (!player.isPresent()) {
+            return false;
+        }
+        boolean allowed = player.get().hasPermission(permission);
+        if (playerDecisions == null) {
+            playerDecisions = this.decisions.computeIfAbsent(uniqueId, id -> new ConcurrentHashMap<>());
+        }
+        playerDecisions.put(permission, new Decision(allowed, now + TTL_NANOS));
+        return allowed;
+    }
+
+    @Listener
+    public void onJoin(@Nonnull ClientConnectionEvent.Join event) {
+        this.decisions.remove(event.getTargetEntity().getUniqueId());
+    }
+
+    @Listener
+    public void onQuit(@Nonnull ClientConnectionEvent.Disconnect event) {
+        this.decisions.remove(event.getTargetEntity().getUniqueId());
+    }
+}
@@ -29,18 +29,19 @@ import org.kitteh.craftirc.endpoint.filter.Filter;
 import org.kitteh.craftirc.util.MinecraftPlayer;
 import org.kitteh.craftirc.util.loadable.Load;
 import org.kitteh.craftirc.util.loadable.Loadable;
-import org.spongepowered.api.entity.living.player.Player;
 
 import javax.annotation.Nonnull;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Optional;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * A filter by permission node.
  */
 @Loadable.Type(name = "permission")
 public final class PermissionFilter extends Filter {
+    private static final Set<String> KEYS = Collections.singleton(ChatEndpoint.RECIPIENT_NAMES.getName());
+
     @Load
     private String permission;
     private final CraftIRC plugin;
@@ -61,17 +62,31 @@ public final class PermissionFilter extends Filter {
 
     @Override
     public void processMessage(@Nonnull TargetedMessage message) {
-        if (message.getCustomData().containsKey(ChatEndpoint.RECIPIENT_NAMES)) {
-            @SuppressWarnings("unchecked")
-            List<MinecraftPlayer> players = (List<MinecraftPlayer>) message.getCustomData().get(ChatEndpoint.RECIPIENT_NAMES);
-            Iterator<MinecraftPlayer> iterator = players.iterator();
-            while (iterator.hasNext()) {
-                MinecraftPlayer minecraftPlayer = iterator.next();
-                Optional<Player> player = this.plugin.getGame().getServer().getPlayer(minecraftPlayer.getName());
-                if (!player.isPresent() || !player.get().hasPermission(this.getPermission())) {
-                    iterator.remove();
+        Set<MinecraftPlayer> players = message.getCustomData().get(ChatEndpoint.RECIPIENT_NAMES);
+        if (players != null) {
+            // The set may be shared with the originating message, so filter into a new one
+            PermissionCache cache = this.plugin.getPermissionCache();
+            Set<MinecraftPlayer> permitted = new HashSet<>(players.size());
+            for (MinecraftPlayer player : players) {
+                if (cache.hasPermission(player.getUniqueID(), this.permission)) {
+                    permitted.add(player);
                 }
             }
+            if (permitted.size() != players.size()) {
+                message.getCustomData().put(ChatEndpoint.RECIPIENT_NAMES, permitted);
+            }
         }
     }
+
+    @Nonnull
+    @Override
+    public Set<String> getReadKeys() {
+        return KEYS;
+    }
+
+    @Nonnull
+    @Override
+    public Set<String> getWrittenKeys() {
+        return KEYS;
+    }
 }
@@ -35,8 +35,6 @@ import org.spongepowered.api.event.filter.cause.First;
 import org.spongepowered.api.event.network.ClientConnectionEvent;
 
 import javax.annotation.Nonnull;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -58,10 +56,13 @@ public class QuitEndpoint extends MinecraftEndpoint {
         if (!event.getChannel().isPresent()) {
             return;
         }
-        Map<String, Object> data = new HashMap<>();
         Set<MinecraftPlayer> recipients = this.collectionToMinecraftPlayer(event.getChannel().get().getMembers());
-        data.put(QuitEndpoint.SENDER_NAME, player.getName());
-        data.put(QuitEndpoint.RECIPIENT_NAMES, recipients);
-        this.getPlugin().getEndpointManager().sendMessage(new Message(this, event.getTargetEntity().getName() + " left the game", data));
+        this.getPlugin().getEndpointManager().sendMessage(Message.builder()
+                .source(this)
+                .category(Message.Category.PRESENCE)
+                .data(QuitEndpoint.SENDER_NAME, player.getName())
+                .data(QuitEndpoint.RECIPIENT_NAMES, recipients)
+                .defaultMessage(event.getTargetEntity().getName() + " left the game")
+                .build());
     }
 }
@@ -0,0 +1,81 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.util;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A character sequence that allows only so many character reads, so a
+ * regular expression with catastrophic backtracking gives up rather than
+ * running for seconds. {@link java.util.regex.Matcher} reads characters
+ * as it steps, so reads stand in for steps.
+ */
+public final class BudgetedCharSequence implements CharSequence {
+    /**
+     * Thrown when the read budget runs out.
+     */
+    public static final class BudgetExceededException extends RuntimeException {
+        private BudgetExceededException() {
+            super("Step budget exceeded", null, false, false);
+        }
+    }
+
+    private final CharSequence delegate;
+    private long remaining;
+
+    /**
+     * Wraps a character sequence.
+     *
+     * @param delegate sequence to wrap
+     * @param budget number of character reads allowed
+     */
+    public BudgetedCharSequence(@Nonnull CharSequence delegate, long budget) {
+        this.delegate = delegate;
+        this.remaining = budget;
+    }
+
+    @Override
+    public int length() {
+        return this.delegate.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (--this.remaining < 0) {
+            throw new BudgetExceededException();
+        }
+        return this.delegate.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return this.delegate.subSequence(start, end);
+    }
+
+    @Nonnull
+    @Override
+    public String toString() {
+        return this.delegate.toString();
+    }
+}
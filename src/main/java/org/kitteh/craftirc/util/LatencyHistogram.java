@@ -0,0 +1,161 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.util;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of latencies with microsecond resolution.
+ * <p/>
+ * Values are counted in log-linear buckets: each power of two is split
+ * into {@value #SUB_BUCKETS} equal buckets, keeping the relative error of
+ * reported percentiles near 6% over the whole range. Recording takes no
+ * locks and allocates nothing: three atomic updates for the bucket, count
+ * and total, and a compare-and-set on the maximum only when a new
+ * maximum is seen.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+        this.counts.incrementAndGet(LatencyHistogram.index(micros));
+        this.count.incrementAndGet();
+        this.total.addAndGet(micros);
+        long currentMax;
+        while (micros > (currentMax = this.max.get()) && !this.max.compareAndSet(currentMax, micros)) {
+            // Retry
+        }
+    }
+
+    /**
+     * Gets the number of recorded latencies.
+     *
+     * @return recorded count
+     */
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * Gets the mean recorded latency.
+     *
+     * @return mean latency in microseconds, or 0 if nothing is recorded
+     */
+    public double getMean() {
+        long count = this.count.get();
+        return count == 0 ? 0 : ((double) this.total.get()) / count;
+    }
+
+    /**
+     * Gets the largest recorded latency.
+     *
+     * @return max latency in microseconds
+     */
+    public long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Gets the latency at or below which the given fraction of recorded
+     * latencies fall.
+     *
+     * @param fraction fraction between 0 and 1, such as 0.99
+     * @return latency in microseconds, or 0 if nothing is recorded
+     */
+    public long getPercentile(double fraction) {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += this.counts.get(i);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(count * fraction));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if (seen >= target) {
+                return Math.min(LatencyHistogram.highestValue(i), this.max.get());
+            }
+        }
+        return this.max.get();
+    }
+
+    /**
+     * Gets a short human readable summary of this histogram.
+     *
+     * @return summary of count and key percentiles
+     */
+    @Nonnull
+    public String getSummary() {
+        return String.format("n=%d p50=%s p99=%s max=%s", this.getCount(),
+                LatencyHistogram.format(this.getPercentile(0.5)),
+                LatencyHistogram.format(this.getPercentile(0.99)),
+                LatencyHistogram.format(this.getMax()));
+    }
+
+    private static int index(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+        int sub = (int) ((micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return ((exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS) + sub;
+    }
+
+    private static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = (index / SUB_BUCKETS) + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + ((sub + 1) * width) - 1;
+    }
+
+    @Nonnull
+    private static String format(long micros) {
+        if (micros < 1000) {
+            return micros + "us";
+        }
+        return String.format("%.1fms", micros / 1000.0);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.util;
+
+import javax.annotation.Nonnull;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Remembers regular expression match results for a single message, so the
+ * same pattern tested against the same input on several links or filters
+ * is only evaluated once.
+ * <p/>
+ * Results are keyed by {@link Pattern} identity. Use {@link #intern} so
+ * that filters configured with identical patterns share one instance.
+ * A result that ran out of steps is remembered with the budget it ran out
+ * of, and only reported to later callers with no larger a budget. Callers
+ * with a larger budget, or none, try again.
+ */
+public final class MatchCache {
+    // Keyed by the pattern's own source string, so an entry lives only as
+    // long as its pattern is in use, such as until the filters holding it
+    // are dropped by a reload
+    private static final Map<String, WeakReference<Pattern>> patterns = new WeakHashMap<>();
+
+    /**
+     * Gets the shared compiled pattern for a regular expression.
+     *
+     * @param regex regular expression
+     * @return compiled pattern
+     * @throws java.util.regex.PatternSyntaxException if the expression is
+     * invalid
+     */
+    @Nonnull
+    public static Pattern intern(@Nonnull String regex) {
+        synchronized (MatchCache.patterns) {
+            WeakReference<Pattern> reference = MatchCache.patterns.get(regex);
+            Pattern pattern = (reference == null) ? null : reference.get();
+            if (pattern == null) {
+                pattern = Pattern.compile(regex);
+                MatchCache.patterns.put(pattern.pattern(), new WeakReference<>(pattern));
+            }
+            return pattern;
+        }
+    }
+
+    /**
+     * Outcome of a match attempt.
+     */
+    public enum Result {
+        MATCH,
+        NO_MATCH,
+        /**
+         * Gave up after running out of steps.
+         */
+        OVER_BUDGET
+    }
+
+    // Values are a Result, or for OVER_BUDGET the Long step budget run out of
+    private final Map<Pattern, Map<String, Object>> finds = new ConcurrentHashMap<>(4);
+    private final Map<Pattern, Map<String, Object>> fullMatches = new ConcurrentHashMap<>(4);
+
+    /**
+     * Gets if the pattern is found anywhere in the input.
+     *
+     * @param pattern pattern
+     * @param input input
+     * @param stepBudget steps allowed, or 0 for no limit
+     * @return result
+     */
+    @Nonnull
+    public Result find(@Nonnull Pattern pattern, @Nonnull String input, long stepBudget) {
+        return this.test(this.finds, pattern, input, stepBudget, false);
+    }
+
+    /**
+     * Gets if the pattern matches the entire input.
+     *
+     * @param pattern pattern
+     * @param input input
+     * @param stepBudget steps allowed, or 0 for no limit
+     * @return result
+     */
+    @Nonnull
+    public Result matches(@Nonnull Pattern pattern, @Nonnull String input, long stepBudget) {
+        return this.test(this.fullMatches, pattern, input, stepBudget, true);
+    }
+
+    @Nonnull
+    private Result test(@Nonnull Map<Pattern, Map<String, Object>> results, @Nonnull Pattern pattern, @Nonnull String input, long stepBudget, boolean full) {
+        Map<String, Object> inputs = results.get(pattern);
+        if (inputs == null) {
+            inputs = results.computeIfAbsent(pattern, p -> new ConcurrentHashMap<>(2));
+        }
+        Object cached = inputs.get(input);
+        if (cached instanceof Result) {
+            return (Result) cached;
+        }
+        if (cached != null && stepBudget > 0 && stepBudget <= (Long) cached) {
+            return Result.OVER_BUDGET;
+        }
+        Matcher matcher = pattern.matcher((stepBudget > 0) ? new BudgetedCharSequence(input, stepBudget) : input);
+        try {
+            Result result = (full ? matcher.matches() : matcher.find()) ? Result.MATCH : Result.NO_MATCH;
+            inputs.put(input, result);
+            return result;
+        } catch (BudgetedCharSequence.BudgetExceededException e) {
+            inputs.put(input, stepBudget);
+            return Result.OVER_BUDGET;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc;
+
+import ninja.leaping.configurate.ConfigurationNode;
+import ninja.leaping.configurate.SimpleConfigurationNode;
+import org.kitteh.craftirc.endpoint.filter.FilterManager;
+import org.slf4j.helpers.NOPLogger;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Sets up just enough of CraftIRC to test pieces of it without Sponge or
+ * IRC.
+ */
+public final class TestFixtures {
+    private TestFixtures() {
+    }
+
+    /**
+     * Creates a CraftIRC instance with a silent logger and a filter
+     * manager with the default filter types registered.
+     *
+     * @return a CraftIRC instance usable for loading links and bots
+     * @throws ReflectiveOperationException if CraftIRC has changed shape
+     */
+    @Nonnull
+    public static CraftIRC createPlugin() throws ReflectiveOperationException {
+        CraftIRC plugin = new CraftIRC();
+        Field loggy = CraftIRC.class.getDeclaredField("loggy");
+        loggy.setAccessible(true);
+        loggy.set(null, NOPLogger.NOP_LOGGER);
+        Field filterManager = CraftIRC.class.getDeclaredField("filterManager");
+        filterManager.setAccessible(true);
+        filterManager.set(plugin, new FilterManager(plugin, SimpleConfigurationNode.root()));
+        return plugin;
+    }
+
+    /**
+     * Shuts down everything the given instance started.
+     *
+     * @param plugin instance from {@link #createPlugin()}
+     * @throws ReflectiveOperationException if CraftIRC has changed shape
+     */
+    public static void shutdown(@Nonnull CraftIRC plugin) throws ReflectiveOperationException {
+        Method shutdown = CraftIRC.class.getDeclaredMethod("dontMakeAGrownManCry");
+        shutdown.setAccessible(true);
+        shutdown.invoke(plugin);
+    }
+
+    /**
+     * Creates a configuration node holding the given value, such as a map
+     * or a list of maps.
+     *
+     * @param value value to store
+     * @return a new root node
+     */
+    @Nonnull
+    public static ConfigurationNode config(@Nonnull Object value) {
+        return SimpleConfigurationNode.root().setValue(value);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.endpoint;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitteh.craftirc.CraftIRC;
+import org.kitteh.craftirc.TestFixtures;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class RingMessageQueueTest {
+    private CraftIRC plugin;
+
+    @Before
+    public void setup() throws Exception {
+        // Sets up the logger for drop warnings
+        this.plugin = TestFixtures.createPlugin();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestFixtures.shutdown(this.plugin);
+    }
+
+    @Test
+    public void wraparound() {
+        RingMessageQueue<Integer> queue = new RingMessageQueue<>("Test queue", 4, MessageQueue.OverflowPolicy.DROP_NEWEST, 0);
+        List<Integer> batch = new ArrayList<>();
+        int next = 0;
+        int expected = 0;
+        // Varying batch sizes walk the sequence across the ring's end many times
+        for (int round = 0; round < 1000; round++) {
+            int count = (round % 4) + 1;
+            for (int i = 0; i < count; i++) {
+                queue.add(next++);
+            }
+            Assert.assertEquals(count, queue.size());
+            batch.clear();
+            queue.poll(batch, 4);
+            for (int element : batch) {
+                Assert.assertEquals(expected++, element);
+            }
+            Assert.assertEquals(0, queue.size());
+        }
+        Assert.assertEquals(next, expected);
+        Assert.assertEquals(0, queue.getDroppedCount());
+    }
+
+    @Test
+    public void capacityBelowPowerOfTwo() {
+        RingMessageQueue<Integer> queue = new RingMessageQueue<>("Test queue", 5, MessageQueue.OverflowPolicy.DROP_NEWEST, 0);
+        for (int i = 0; i < 8; i++) {
+            queue.add(i);
+        }
+        Assert.assertEquals(5, queue.size());
+        Assert.assertEquals(3, queue.getDroppedCount());
+        List<Integer> batch = new ArrayList<>();
+        queue.poll(batch, 2);
+        Assert.assertEquals(Arrays.asList(0, 1), batch);
+        // Room for two more, not three
+        for (int i = 8; i < 11; i++) {
+            queue.add(i);
+        }
+        Assert.assertEquals(4, queue.getDroppedCount());
+        batch.clear();
+        queue.poll(batch, 10);
+        Assert.assertEquals(Arrays.asList(2, 3, 4, 8, 9), batch);
+    }
+
+    @Test
+    public void drainWaits() throws InterruptedException {
+        RingMessageQueue<Integer> queue = new RingMessageQueue<>("Test queue", 4, MessageQueue.OverflowPolicy.DROP_NEWEST, 0);
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            queue.add(1);
+        });
+        producer.start();
+        List<Integer> batch = new ArrayList<>();
+        queue.drainTo(batch, 4);
+        Assert.assertEquals(Arrays.asList(1), batch);
+        producer.join();
+    }
+
+    @Test
+    public void blockThenDrop() {
+        RingMessageQueue<Integer> queue = new RingMessageQueue<>("Test queue", 1, MessageQueue.OverflowPolicy.BLOCK, 20);
+        queue.add(1);
+        long start = System.nanoTime();
+        queue.add(2);
+        Assert.assertTrue(System.nanoTime() - start >= 20000000L);
+        Assert.assertEquals(1, queue.getDroppedCount());
+        Assert.assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void concurrentProducers() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 20000;
+        // Small enough that producers wrap around the ring and wait on the consumer
+        RingMessageQueue<int[]> queue = new RingMessageQueue<>("Test queue", 64, MessageQueue.OverflowPolicy.BLOCK, 10000);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    queue.add(new int[]{producer, i});
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        int[] next = new int[producers];
+        List<int[]> batch = new ArrayList<>();
+        for (int received = 0; received < producers * perProducer; received += batch.size()) {
+            batch.clear();
+            queue.drainTo(batch, 16);
+            for (int[] element : batch) {
+                // In order for each producer
+                Assert.assertEquals(next[element[0]]++, element[1]);
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(0, queue.getDroppedCount());
+        Assert.assertEquals(0, queue.size());
+    }
+}
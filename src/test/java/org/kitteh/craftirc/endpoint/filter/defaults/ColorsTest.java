@@ -0,0 +1,114 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.endpoint.filter.defaults;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ColorsTest {
+    /**
+     * Minecraft code and the matching IRC color code, for every color.
+     */
+    private static final String[][] COLORS = {
+            {"0", "\u000301"},
+            {"1", "\u000302"},
+            {"2", "\u000303"},
+            {"3", "\u000310"},
+            {"4", "\u000305"},
+            {"5", "\u000306"},
+            {"6", "\u000307"},
+            {"7", "\u000315"},
+            {"8", "\u000314"},
+            {"9", "\u000312"},
+            {"a", "\u000309"},
+            {"b", "\u000311"},
+            {"c", "\u000304"},
+            {"d", "\u000313"},
+            {"e", "\u000308"},
+            {"f", "\u000300"}
+    };
+
+    @Test
+    public void everyColorToIRC() {
+        for (String[] color : COLORS) {
+            Assert.assertEquals(color[1] + "x\u000F", Colors.toIRC("§" + color[0] + "x"));
+            Assert.assertEquals(color[1] + "x\u000F", Colors.toIRC("§" + color[0].toUpperCase() + "x"));
+        }
+    }
+
+    @Test
+    public void everyColorToMC() {
+        for (String[] color : COLORS) {
+            Assert.assertEquals("§" + color[0] + "x§r", Colors.toMC(color[1] + "x"));
+        }
+    }
+
+    @Test
+    public void stylesToIRC() {
+        Assert.assertEquals("\u0002bold \u001Ditalic \u001Funder\u000F", Colors.toIRC("§lbold §oitalic §nunder"));
+        // Repeated styles are not toggled back off
+        Assert.assertEquals("\u0002x\u000F", Colors.toIRC("§l§Lx"));
+    }
+
+    @Test
+    public void colorClearsStylesToIRC() {
+        Assert.assertEquals("\u0002bold \u000F\u000304red\u000F", Colors.toIRC("§lbold §cred"));
+        Assert.assertEquals("\u000304red \u000Fplain\u000F", Colors.toIRC("§cred §rplain"));
+    }
+
+    @Test
+    public void unknownCodesToIRC() {
+        // Obfuscated and strikethrough have no IRC equivalent
+        Assert.assertEquals("magic strike\u000F", Colors.toIRC("§kmagic §mstrike"));
+        // Not a code at all
+        Assert.assertEquals("100§ §\u000F", Colors.toIRC("100§ §"));
+    }
+
+    @Test
+    public void colorNumbersToMC() {
+        Assert.assertEquals("§cred§r", Colors.toMC("\u00034red"));
+        Assert.assertEquals("§cred§r", Colors.toMC("\u000304,01red"));
+        Assert.assertEquals("§c5§r", Colors.toMC("\u00034,015"));
+        // Only two digits are part of the code
+        Assert.assertEquals("§c5§r", Colors.toMC("\u0003045"));
+    }
+
+    @Test
+    public void defaultAndUnknownColorsToMC() {
+        Assert.assertEquals("§cred§rplain§r", Colors.toMC("\u00034red\u0003plain"));
+        Assert.assertEquals("§cred§rplain§r", Colors.toMC("\u00034red\u000399plain"));
+        // Extended colors have no Minecraft equivalent
+        Assert.assertEquals("§cred still§r", Colors.toMC("\u00034red\u000352 still"));
+    }
+
+    @Test
+    public void stylesToMC() {
+        Assert.assertEquals("§lbold§rplain§r", Colors.toMC("\u0002bold\u0002plain"));
+        // Turning a style off restores the color and the remaining styles
+        Assert.assertEquals("§c§l§obold§c§oitalic§r", Colors.toMC("\u00034\u0002\u001Dbold\u0002italic"));
+        Assert.assertEquals("§c§lx§ry§r", Colors.toMC("\u00034\u0002x\u000Fy"));
+        // Reverse has no Minecraft equivalent
+        Assert.assertEquals("x§r", Colors.toMC("\u0016x"));
+    }
+}
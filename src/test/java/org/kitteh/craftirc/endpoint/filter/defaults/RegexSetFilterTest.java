@@ -0,0 +1,165 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.endpoint.filter.defaults;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitteh.craftirc.CraftIRC;
+import org.kitteh.craftirc.TestFixtures;
+import org.kitteh.craftirc.endpoint.Endpoint;
+import org.kitteh.craftirc.endpoint.Message;
+import org.kitteh.craftirc.endpoint.TargetedMessage;
+import org.kitteh.craftirc.endpoint.link.Link;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class RegexSetFilterTest {
+    private CraftIRC plugin;
+    private Endpoint endpoint;
+
+    @Before
+    public void setup() throws Exception {
+        this.plugin = TestFixtures.createPlugin();
+        this.endpoint = new Endpoint() {
+            @Override
+            protected void receiveMessage(@Nonnull TargetedMessage message) {
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestFixtures.shutdown(this.plugin);
+    }
+
+    @Test
+    public void matchedPatternAfterGroups() {
+        // Each pattern's groups shift the group numbers of those after it
+        Link link = this.link("allow", "(a)(b)c", "x(y)", "(?:q)(r)(s)(t)", "plain");
+        Assert.assertEquals("(a)(b)c", this.filter(link, "abc").getCustomData().get(RegexSetFilter.MATCHED_PATTERN));
+        Assert.assertEquals("x(y)", this.filter(link, "-xy-").getCustomData().get(RegexSetFilter.MATCHED_PATTERN));
+        Assert.assertEquals("(?:q)(r)(s)(t)", this.filter(link, "qrst").getCustomData().get(RegexSetFilter.MATCHED_PATTERN));
+        Assert.assertEquals("plain", this.filter(link, "plain text").getCustomData().get(RegexSetFilter.MATCHED_PATTERN));
+        Assert.assertTrue(this.filter(link, "nothing here").isRejected());
+    }
+
+    @Test
+    public void backreferencesMatchedSeparately() {
+        Link link = this.link("allow", "(\\w)\\1", "(?<c>[.!])\\k<c>", "foo");
+        Assert.assertEquals("(\\w)\\1", this.filter(link, "hello").getCustomData().get(RegexSetFilter.MATCHED_PATTERN));
+        Assert.assertEquals("(?<c>[.!])\\k<c>", this.filter(link, "wait.. what").getCustomData().get(RegexSetFilter.MATCHED_PATTERN));
+        Assert.assertEquals("foo", this.filter(link, "a foo").getCustomData().get(RegexSetFilter.MATCHED_PATTERN));
+        Assert.assertTrue(this.filter(link, "abc").isRejected());
+    }
+
+    @Test
+    public void duplicateGroupNamesMatchedSeparately() {
+        // Named groups cannot repeat within one combined pattern
+        Link link = this.link("allow", "(?<animal>cat)", "(?<animal>dog)");
+        Assert.assertEquals("(?<animal>cat)", this.filter(link, "a cat").getCustomData().get(RegexSetFilter.MATCHED_PATTERN));
+        Assert.assertEquals("(?<animal>dog)", this.filter(link, "a dog").getCustomData().get(RegexSetFilter.MATCHED_PATTERN));
+        Assert.assertTrue(this.filter(link, "a bird").isRejected());
+    }
+
+    @Test
+    public void drop() {
+        Link link = this.link("drop", "bad", "(w)orse");
+        Assert.assertTrue(this.filter(link, "a bad word").isRejected());
+        Assert.assertTrue(this.filter(link, "a worse word").isRejected());
+        TargetedMessage kept = this.filter(link, "a fine word");
+        Assert.assertFalse(kept.isRejected());
+        Assert.assertNull(kept.getCustomData().get(RegexSetFilter.MATCHED_PATTERN));
+    }
+
+    @Test
+    public void replacePartial() {
+        Map<String, Object> config = RegexSetFilterTest.config("replace", "bad", "(w)orse", "(\\w)\\1");
+        config.put("replacement", "*");
+        Link link = this.link(config);
+        TargetedMessage message = this.filter(link, "bad, worse, all");
+        Assert.assertEquals("*, *, a*", message.getCustomData().get(Endpoint.MESSAGE_TEXT));
+        Assert.assertEquals("bad", message.getCustomData().get(RegexSetFilter.MATCHED_PATTERN));
+    }
+
+    @Test
+    public void replaceFull() {
+        Map<String, Object> config = RegexSetFilterTest.config("replace", "bad", "wor+se");
+        config.put("replacement", "*");
+        config.put("match", "full");
+        Link link = this.link(config);
+        Assert.assertEquals("*", this.filter(link, "worrrse").getCustomData().get(Endpoint.MESSAGE_TEXT));
+        TargetedMessage partial = this.filter(link, "bad word");
+        Assert.assertEquals("bad word", partial.getCustomData().get(Endpoint.MESSAGE_TEXT));
+        Assert.assertNull(partial.getCustomData().get(RegexSetFilter.MATCHED_PATTERN));
+    }
+
+    @Test
+    public void invalidConfig() {
+        Map<String, Object> groupReference = RegexSetFilterTest.config("replace", "(bad)");
+        groupReference.put("replacement", "$1");
+        Assert.assertTrue(this.link(groupReference).getFilterStats().isEmpty());
+        Assert.assertTrue(this.link("store", "bad").getFilterStats().isEmpty());
+        Assert.assertTrue(this.link("allow").getFilterStats().isEmpty());
+        Assert.assertTrue(this.link("allow", "(unclosed").getFilterStats().isEmpty());
+    }
+
+    @Nonnull
+    private Link link(@Nonnull String action, @Nonnull String... patterns) {
+        return this.link(RegexSetFilterTest.config(action, patterns));
+    }
+
+    @Nonnull
+    private Link link(@Nonnull Map<String, Object> config) {
+        return new Link(this.plugin, "source", "target", TestFixtures.config(Arrays.asList(config)).getChildrenList());
+    }
+
+    @Nonnull
+    private TargetedMessage filter(@Nonnull Link link, @Nonnull String text) {
+        Message message = Message.builder()
+                .source(this.endpoint)
+                .data(Endpoint.MESSAGE_TEXT, text)
+                .defaultMessage(text)
+                .build();
+        TargetedMessage targeted = new TargetedMessage(this.endpoint, message);
+        link.filterMessage(targeted);
+        return targeted;
+    }
+
+    @Nonnull
+    private static Map<String, Object> config(@Nonnull String action, @Nonnull String... patterns) {
+        Map<String, Object> config = new HashMap<>();
+        config.put("type", "regex-set");
+        config.put("value", Endpoint.MESSAGE_TEXT.getName());
+        config.put("action", action);
+        if (patterns.length > 0) {
+            config.put("patterns", Arrays.asList(patterns));
+        }
+        return config;
+    }
+}
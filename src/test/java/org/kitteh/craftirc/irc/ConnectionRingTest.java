@@ -0,0 +1,127 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.irc;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitteh.craftirc.CraftIRC;
+import org.kitteh.craftirc.TestFixtures;
+import org.kitteh.irc.client.library.Client;
+import org.kitteh.irc.client.library.feature.CaseMapping;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ConnectionRingTest {
+    private static final int CHANNELS = 4000;
+
+    private CraftIRC plugin;
+    private List<BotConnection> connections;
+    private ConnectionRing ring;
+
+    @Before
+    public void setup() throws Exception {
+        this.plugin = TestFixtures.createPlugin();
+        Client client = (Client) Proxy.newProxyInstance(Client.class.getClassLoader(), new Class<?>[]{Client.class}, (proxy, method, args) -> null);
+        this.connections = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            BotConnection connection = new BotConnection(this.plugin, "bot-" + i, client, TestFixtures.config(Collections.emptyMap()));
+            connection.setConnected(true);
+            this.connections.add(connection);
+        }
+        this.ring = new ConnectionRing("bot", this.connections, CaseMapping.RFC1459::toLowerCase);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestFixtures.shutdown(this.plugin);
+    }
+
+    @Test
+    public void evenDistribution() {
+        Map<BotConnection, Integer> counts = new HashMap<>();
+        for (int i = 0; i < CHANNELS; i++) {
+            counts.merge(this.ring.getOwner("#channel" + i), 1, Integer::sum);
+        }
+        Assert.assertEquals(this.connections.size(), counts.size());
+        int fair = CHANNELS / this.connections.size();
+        for (int count : counts.values()) {
+            Assert.assertTrue("Uneven share: " + count, count > (fair * 3 / 4) && count < (fair * 5 / 4));
+        }
+    }
+
+    @Test
+    public void onlyDownChannelsMove() {
+        Map<String, BotConnection> before = this.owners();
+        BotConnection down = this.connections.get(1);
+        down.setConnected(false);
+        Set<BotConnection> takers = new HashSet<>();
+        for (Map.Entry<String, BotConnection> entry : this.owners().entrySet()) {
+            BotConnection was = before.get(entry.getKey());
+            BotConnection now = entry.getValue();
+            Assert.assertNotSame(down, now);
+            if (was == down) {
+                takers.add(now);
+            } else {
+                Assert.assertSame(was, now);
+            }
+        }
+        // Spread over the others rather than piled onto one
+        Assert.assertEquals(this.connections.size() - 1, takers.size());
+        down.setConnected(true);
+        Assert.assertEquals(before, this.owners());
+    }
+
+    @Test
+    public void noneConnected() {
+        Map<String, BotConnection> before = this.owners();
+        for (BotConnection connection : this.connections) {
+            connection.setConnected(false);
+        }
+        Assert.assertEquals(before, this.owners());
+    }
+
+    @Test
+    public void caseMapped() {
+        for (int i = 0; i < 100; i++) {
+            Assert.assertSame(this.ring.getOwner("#chan[" + i + "]"), this.ring.getOwner("#CHAN{" + i + "}"));
+        }
+    }
+
+    private Map<String, BotConnection> owners() {
+        Map<String, BotConnection> owners = new HashMap<>();
+        for (int i = 0; i < CHANNELS; i++) {
+            owners.put("#channel" + i, this.ring.getOwner("#channel" + i));
+        }
+        return owners;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.irc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class LineSplitterTest {
+    @Test
+    public void byteLength() {
+        Assert.assertEquals(1, LineSplitter.getByteLength("a"));
+        Assert.assertEquals(2, LineSplitter.getByteLength("é"));
+        Assert.assertEquals(3, LineSplitter.getByteLength("€"));
+        Assert.assertEquals(4, LineSplitter.getByteLength("😀"));
+        Assert.assertEquals(10, LineSplitter.getByteLength("aé€😀"));
+    }
+
+    @Test
+    public void fits() {
+        Assert.assertEquals(Collections.singletonList("hello world"), LineSplitter.split("hello world", 11));
+    }
+
+    @Test
+    public void splitAtSpaces() {
+        Assert.assertEquals(Arrays.asList("hello world", "foo bar"), LineSplitter.split("hello world foo bar", 11));
+        Assert.assertEquals(Arrays.asList("one", "two", "three"), LineSplitter.split("one two three", 6));
+    }
+
+    @Test
+    public void splitLongWords() {
+        Assert.assertEquals(Arrays.asList("abcd", "efgh", "ij"), LineSplitter.split("abcdefghij", 4));
+        Assert.assertEquals(Arrays.asList("ab", "cdef", "gh"), LineSplitter.split("ab cdefgh", 4));
+    }
+
+    @Test
+    public void splitByEncodedLength() {
+        Assert.assertEquals(Arrays.asList("éé", "éé"), LineSplitter.split("éééé", 5));
+        Assert.assertEquals(Arrays.asList("a€", "€"), LineSplitter.split("a€€", 5));
+        List<String> pieces = LineSplitter.split("Grüße aus Köln, schöne Grüße zurück", 10);
+        for (String piece : pieces) {
+            Assert.assertTrue(piece, LineSplitter.getByteLength(piece) <= 10);
+        }
+        Assert.assertEquals("Grüße aus Köln, schöne Grüße zurück", String.join(" ", pieces));
+    }
+
+    @Test
+    public void keepSurrogatePairs() {
+        Assert.assertEquals(Arrays.asList("a😀", "😀"), LineSplitter.split("a😀😀", 5));
+        Assert.assertEquals(Arrays.asList("a", "😀", "b"), LineSplitter.split("a😀b", 4));
+        // A pair larger than the limit is sent whole rather than broken
+        Assert.assertEquals(Arrays.asList("😀", "b"), LineSplitter.split("😀b", 3));
+    }
+
+    @Test
+    public void keepColorCodes() {
+        Assert.assertEquals(Arrays.asList("ab", "\u000304,02c", "\u000304,02d"), LineSplitter.split("ab\u000304,02cd", 7));
+        Assert.assertEquals(Arrays.asList("ab\u00034c", "\u000304d"), LineSplitter.split("ab\u00034cd", 5));
+    }
+
+    @Test
+    public void carryFormatting() {
+        Assert.assertEquals(Arrays.asList("\u00034,2red", "\u000304,02\u0002bold", "\u000304,02\u0002words"), LineSplitter.split("\u00034,2red \u0002bold words", 12));
+        // Styles turned off aren't carried
+        Assert.assertEquals(Arrays.asList("\u0002\u001Fab\u001F", "\u0002cd ef", "\u0002gh"), LineSplitter.split("\u0002\u001Fab\u001F cd ef gh", 6));
+        // Nothing is carried past a reset
+        Assert.assertEquals(Arrays.asList("\u00034red\u000F", "plain text", "here"), LineSplitter.split("\u00034red\u000F plain text here", 10));
+    }
+
+    @Test
+    public void padCarriedColors() {
+        // Digits starting a continuation are not read as part of the color
+        Assert.assertEquals(Arrays.asList("\u00034x 5 6", "\u0003047 8 9", "\u00030410 11"), LineSplitter.split("\u00034x 5 6 7 8 9 10 11", 8));
+    }
+}
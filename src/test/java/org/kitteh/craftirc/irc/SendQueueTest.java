@@ -0,0 +1,193 @@
+/*
+ * * Copyright (C) 2014-2018 Matt Baxter http://kitteh.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use, copy,
+ * modify, merge, publish, distribute, sublicense, and/or sell copies
+ * of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS
+ * BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN
+ * ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.kitteh.craftirc.irc;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.kitteh.craftirc.CraftIRC;
+import org.kitteh.craftirc.TestFixtures;
+import org.kitteh.craftirc.endpoint.Message;
+import org.kitteh.irc.client.library.Client;
+import org.kitteh.irc.client.library.feature.CaseMapping;
+import org.kitteh.irc.client.library.feature.ServerInfo;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class SendQueueTest {
+    private final BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+    private CraftIRC plugin;
+    private Client client;
+
+    @Before
+    public void setup() throws Exception {
+        this.plugin = TestFixtures.createPlugin();
+        ServerInfo serverInfo = (ServerInfo) Proxy.newProxyInstance(ServerInfo.class.getClassLoader(), new Class<?>[]{ServerInfo.class}, (proxy, method, args) -> method.getName().equals("getCaseMapping") ? CaseMapping.RFC1459 : null);
+        this.client = (Client) Proxy.newProxyInstance(Client.class.getClassLoader(), new Class<?>[]{Client.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getNick":
+                    return "CraftIRC";
+                case "getUser":
+                    return Optional.empty();
+                case "getServerInfo":
+                    return serverInfo;
+                case "sendMessage":
+                    this.sent.add(args[0] + " " + args[1]);
+                    return null;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        TestFixtures.shutdown(this.plugin);
+    }
+
+    @Test
+    public void packBySender() throws InterruptedException {
+        SendQueue queue = this.queue(SendQueueTest.settings(10, 5, 50));
+        queue.setPaused(true);
+        queue.add("#Chan", Message.Category.CHAT, "kitteh", "one");
+        queue.add("#chan", Message.Category.CHAT, "kitteh", "two");
+        // Another sender isn't packed in while tokens remain
+        queue.add("#chan", Message.Category.CHAT, "other", "three");
+        Assert.assertEquals(1, queue.getMergedCount());
+        Assert.assertEquals(2, queue.getDepth());
+        queue.setPaused(false);
+        Assert.assertEquals("#Chan one | two", this.next());
+        Assert.assertEquals("#chan three", this.next());
+    }
+
+    @Test
+    public void mergeWhenOutOfTokens() throws InterruptedException {
+        SendQueue queue = this.queue(SendQueueTest.settings(0.001, 1, 0));
+        queue.add("#chan", Message.Category.CHAT, null, "first");
+        Assert.assertEquals("#chan first", this.next());
+        queue.add("#chan", Message.Category.CHAT, null, "second");
+        queue.add("#CHAN", Message.Category.CHAT, null, "third");
+        Assert.assertEquals(1, queue.getMergedCount());
+        Assert.assertEquals(1, queue.getDepth());
+        // Only lines of the same class merge
+        queue.add("#chan", Message.Category.SYSTEM, null, "system");
+        Assert.assertEquals(1, queue.getMergedCount());
+        Assert.assertEquals(2, queue.getDepth());
+    }
+
+    @Test
+    public void mergeWithinLineLimit() throws InterruptedException {
+        SendQueue queue = this.queue(SendQueueTest.settings(0.001, 1, 0));
+        queue.add("#chan", Message.Category.CHAT, null, "first");
+        Assert.assertEquals("#chan first", this.next());
+        queue.add("#chan", Message.Category.CHAT, null, SendQueueTest.repeat('a', 300));
+        queue.add("#chan", Message.Category.CHAT, null, SendQueueTest.repeat('b', 300));
+        Assert.assertEquals(0, queue.getMergedCount());
+        Assert.assertEquals(2, queue.getDepth());
+    }
+
+    @Test
+    public void splitLongLines() {
+        SendQueue queue = this.queue(SendQueueTest.settings(10, 5, 0));
+        queue.setPaused(true);
+        // 512 bytes, less the assumed prefix, the command and the line ending, leaves 413 per line
+        queue.add("#c", Message.Category.CHAT, null, SendQueueTest.repeat('a', 826));
+        Assert.assertEquals(2, queue.getDepth());
+        queue.add("#d", Message.Category.CHAT, null, SendQueueTest.repeat('a', 827));
+        Assert.assertEquals(5, queue.getDepth());
+    }
+
+    @Test
+    public void summarizePresence() throws InterruptedException {
+        Map<String, Object> settings = SendQueueTest.settings(100, 10, 0);
+        settings.put("presence-threshold", 2);
+        SendQueue queue = this.queue(settings);
+        queue.setPaused(true);
+        queue.add("#a", Message.Category.CHAT, null, "one");
+        queue.add("#b", Message.Category.CHAT, null, "two");
+        queue.add("#Chan", Message.Category.PRESENCE, null, "kitteh joined");
+        queue.add("#chan", Message.Category.PRESENCE, null, "kitten joined");
+        Assert.assertEquals(2, queue.getSummarizedCount());
+        Assert.assertEquals(2, queue.getDepth());
+        queue.setPaused(false);
+        Assert.assertEquals("#a one", this.next());
+        Assert.assertEquals("#b two", this.next());
+        Assert.assertEquals("#chan [2 join/quit messages not shown]", this.next());
+    }
+
+    @Test
+    public void evictLeastImportant() throws InterruptedException {
+        Map<String, Object> settings = SendQueueTest.settings(100, 10, 0);
+        settings.put("capacity", 2);
+        SendQueue queue = this.queue(settings);
+        queue.setPaused(true);
+        queue.add("#a", Message.Category.CHAT, null, "one");
+        queue.add("#b", Message.Category.PRESENCE, null, "kitteh joined");
+        queue.add("#c", Message.Category.CHAT, null, "two");
+        // Nothing less important waiting, so the arrival is dropped
+        queue.add("#d", Message.Category.PRESENCE, null, "kitten joined");
+        Assert.assertEquals(2, queue.getDroppedCount());
+        queue.setPaused(false);
+        Assert.assertEquals("#a one", this.next());
+        Assert.assertEquals("#c two", this.next());
+    }
+
+    @Nonnull
+    private SendQueue queue(@Nonnull Map<String, Object> settings) {
+        return new SendQueue(this.plugin, "test", this.client, TestFixtures.config(settings));
+    }
+
+    @Nonnull
+    private String next() throws InterruptedException {
+        String line = this.sent.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull("Nothing sent", line);
+        return line;
+    }
+
+    @Nonnull
+    private static Map<String, Object> settings(double rate, int burst, long packWindow) {
+        Map<String, Object> settings = new HashMap<>();
+        settings.put("rate", rate);
+        settings.put("burst", burst);
+        settings.put("pack-window", packWindow);
+        return settings;
+    }
+
+    @Nonnull
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}